@@ -144,6 +144,7 @@ public class LoomGradleExtension {
 	private JarMergeOrder mergeOrder = JarMergeOrder.INDIFFERENT;
 	private final List<Predicate<String>> libraryFilters = new ArrayList<>();
 	private boolean bulldozeMappings;
+	private boolean alwaysRebuildMappings;
 	private NameAcceptor fieldInferenceFilter = (inputMapping, originalName, replacementName) -> originalName.startsWith("field_");
 	private final List<LocalNameSuggestor> nameSuggestors = new ArrayList<>();
 	private final Map<String, String> tokens = new HashMap<>();
@@ -486,6 +487,14 @@ public class LoomGradleExtension {
 		return bulldozeMappings;
 	}
 
+	public void setAlwaysRebuildMappings(boolean rebuild) {
+		alwaysRebuildMappings = rebuild;
+	}
+
+	public boolean shouldAlwaysRebuildMappings() {
+		return alwaysRebuildMappings;
+	}
+
 	public void setFieldInferenceFilter(NameAcceptor filter) {
 		fieldInferenceFilter = filter;
 	}
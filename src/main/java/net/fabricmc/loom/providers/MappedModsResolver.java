@@ -70,6 +70,7 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 
 		String mappingsSuffix = mappingsProvider.mappingsName + '.' + mappingsProvider.minecraftVersion.replace(' ', '_').replace('.', '_').replace('-', '_') + '.' + mappingsProvider.mappingsVersion;
 		File modCache = extension.getRemappedModCache();
+		boolean force = !mappingsProvider.isCacheable(); //The mappings are being rebuilt each time, so could have changed without their name doing so
 
 		Logger logger = project.getLogger();
 		logger.info("Collected {} mods to remap to {}", mods.size(), modCache);
@@ -86,13 +87,13 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 			File input = artifact.getFile();
 			File output = new File(modCache, String.format("%s-%s@%s%s.jar", name, version, mappingsSuffix, classifier.replace(':', '-')));
 
-			remapIfNecessary(logger, input, output, artifact.getSources().isPresent());
+			remapIfNecessary(logger, input, output, artifact.getSources().isPresent(), force);
 			if (extension.extractJars) handleNestedJars(project, extension, input.getPath(), input, mod.getLeft());
 
 			artifact.getSources().ifPresent(sources -> {
 				File remappedSources = new File(modCache, String.format("%s-%s@%s%s-sources.jar", name, version, mappingsSuffix, classifier.replace(':', '-')));
 
-				if (!remappedSources.exists() || sources.lastModified() <= 0 || sources.lastModified() > remappedSources.lastModified()) {
+				if (force || !remappedSources.exists() || sources.lastModified() <= 0 || sources.lastModified() > remappedSources.lastModified()) {
 					logger.info("Queuing remapping of {} to {}", sources.getName(), remappedSources.getName());
 
 					provider.queueRemap(sources, remappedSources);
@@ -115,8 +116,8 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 		}
 	}
 
-	private void remapIfNecessary(Logger logger, File input, File output, boolean hasSource) {
-		if (!output.exists() || input.lastModified() <= 0 || input.lastModified() > output.lastModified()) {
+	private void remapIfNecessary(Logger logger, File input, File output, boolean hasSource, boolean force) {
+		if (force || !output.exists() || input.lastModified() <= 0 || input.lastModified() > output.lastModified()) {
 			//If the output doesn't exist, or appears to be outdated compared to the input we'll remap it
 			logger.info("Queuing remapping of {} to {}", input.getName(), output.getName());
 
@@ -168,7 +169,7 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 		File remappedFile = new File(extension.getRemappedModCache(), jarName);
 		//There is an expectation the outer jar doesn't contain the nested jar's sources
 		//There is nothing stopping them from doing so, however this is not configured by default (so no one will)
-		remapIfNecessary(project.getLogger(), nestedFile, remappedFile, false);
+		remapIfNecessary(project.getLogger(), nestedFile, remappedFile, false, !getProvider(MappingsProvider.class).isCacheable());
 
 		//Recurse into the newly extracted mod to see if it has anything nested inside
 		handleNestedJars(project, extension, origin, nestedFile, config);
@@ -32,6 +32,7 @@ import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
+import net.fabricmc.loom.providers.mappings.BinaryMappings;
 import net.fabricmc.loom.util.StaticPathWatcher;
 import net.fabricmc.mappings.Mappings;
 import net.fabricmc.mappings.MappingsProvider;
@@ -45,21 +46,32 @@ public final class MappingsCache {
 	}
 
 	//TODO: loom doesn't actually use new mappings when the mappings change until the Gradle daemons are stopped
-    public Mappings get(Path mappingsPath) throws IOException {
+    public synchronized Mappings get(Path mappingsPath) throws IOException {
 		mappingsPath = mappingsPath.toAbsolutePath();
 
         SoftReference<Mappings> ref = !StaticPathWatcher.INSTANCE.hasFileChanged(mappingsPath) ? mappingsCache.get(mappingsPath) : null;
         Mappings mappings = ref != null ? ref.get() : null;
 
         if (mappings == null) {
-        	try (InputStream stream = Files.newInputStream(mappingsPath)) {
-                mappings = MappingsProvider.readTinyMappings(stream, false);
-                mappingsCache.put(mappingsPath, new SoftReference<>(mappings));
-            }
+        	Path store = BinaryMappings.storeFor(mappingsPath);
+
+        	if (!BinaryMappings.isCurrent(store, mappingsPath)) {
+        		//Only need to parse the text once, after which the binary form can be read straight back in
+        		try (InputStream stream = Files.newInputStream(mappingsPath)) {
+                    BinaryMappings.write(MappingsProvider.readTinyMappings(stream, false), mappingsPath, store);
+                }
+        	}
+
+        	mappings = BinaryMappings.open(store);
+        	mappingsCache.put(mappingsPath, new SoftReference<>(mappings));
 
         	StaticPathWatcher.INSTANCE.resetFile(mappingsPath);
         }
 
         return mappings;
     }
+
+	public synchronized void invalidate(Path mappingsPath) {
+		mappingsCache.remove(mappingsPath.toAbsolutePath());
+	}
 }
@@ -7,28 +7,34 @@
  */
 package net.fabricmc.loom.providers;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -37,23 +43,33 @@ import java.util.Set;
 import java.util.StringJoiner;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
 
 import cuchaz.enigma.command.MapSpecializedMethodsCommand;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
+import org.codehaus.groovy.runtime.ConversionHandler;
+
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
@@ -66,13 +82,18 @@ import net.fabricmc.loom.providers.LazyMappings.ActiveMappings;
 import net.fabricmc.loom.providers.MinecraftProvider.MinecraftVersion;
 import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile;
 import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile.MappingType;
+import net.fabricmc.loom.providers.mappings.BinaryMappings;
 import net.fabricmc.loom.providers.mappings.EnigmaReader;
+import net.fabricmc.loom.providers.mappings.IMappingAcceptor;
 import net.fabricmc.loom.providers.mappings.MappingBlob;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+import net.fabricmc.loom.providers.mappings.MappingsJar;
+import net.fabricmc.loom.providers.mappings.ParameterNames;
 import net.fabricmc.loom.providers.mappings.TinyDuplicator;
 import net.fabricmc.loom.providers.mappings.TinyReader;
+import net.fabricmc.loom.providers.mappings.TinyReader.Projection;
 import net.fabricmc.loom.providers.mappings.TinyV2toV1;
 import net.fabricmc.loom.providers.mappings.TinyWriter;
 import net.fabricmc.loom.util.Constants;
@@ -83,8 +104,8 @@ import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.FieldEntry;
 import net.fabricmc.mappings.Mappings;
 import net.fabricmc.mappings.MethodEntry;
-import net.fabricmc.stitch.commands.CommandCorrectMappingUnions;
-import net.fabricmc.stitch.commands.CommandProposeFieldNames;
+import net.fabricmc.stitch.commands.CommandProposeFieldNames.NameAcceptor;
+import net.fabricmc.stitch.util.FieldNameFinder;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.tinyremapper.IMappingProvider;
 
@@ -95,6 +116,8 @@ public class MappingsProvider extends LogicalDependencyProvider {
 	public MappingFactory mcRemappingFactory;
 
 	static final String INTERMEDIARY = "net.fabricmc.intermediary";
+	/** How many checkpoints from other mapping stacks are kept for each Minecraft version */
+	private static final int MAX_CHECKPOINTS = 32;
 	private final List<MappingFile> mappingFiles = new ArrayList<>();
 
 	public String mappingsName;
@@ -104,20 +127,26 @@ public class MappingsProvider extends LogicalDependencyProvider {
 	public File MAPPINGS_DIR;
 	public File MAPPINGS_MIXIN_EXPORT;
 
-	private Path stackHistory;
-	private boolean knownStack;
 	private File intermediaryNames;
 	// The mappings that gradle gives us
 	private File MAPPINGS_TINY_BASE;
 	// The mappings we use in practice
 	public File MAPPINGS_TINY;
-	private Path parameterNames, decompileComments;
+	private Path parameterNames, decompileComments, commentSources;
+	private boolean cacheable = true;
+	private static boolean warnedUnhashable;
 
 	public Mappings getMappings() throws IOException {
 		return MappingsCache.INSTANCE.get(MAPPINGS_TINY.toPath());
 	}
 
-	public Path getDecompileMappings() {
+	/** Whether the mappings, and anything made with them, can be reused from a previous build rather than always being made again */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	public synchronized Path getDecompileMappings() throws IOException {
+		if (Files.notExists(decompileComments) && Files.exists(commentSources)) writeDecompileComments();
 		return decompileComments;
 	}
 
@@ -134,12 +163,25 @@ public class MappingsProvider extends LogicalDependencyProvider {
 	public void provide(Project project, LoomGradleExtension extension, Consumer<Runnable> postPopulationScheduler) throws Exception {
 		MinecraftProvider minecraftProvider = getProvider(MinecraftProvider.class);
 
+		cacheable = !extension.shouldAlwaysRebuildMappings();
 		initFiles(extension, project.getLogger(), minecraftProvider);
+		if (!cacheable) {
+			MappingsCache.INSTANCE.invalidate(MAPPINGS_TINY.toPath());
+			MAPPINGS_TINY_BASE.delete();
+			MAPPINGS_TINY.delete();
+		}
 
 		if (!MAPPINGS_TINY_BASE.exists() || !MAPPINGS_TINY.exists()) {
 			FileUtils.forceMkdir(MAPPINGS_DIR);
 
+			ForkJoinTask<Map<EntryTriple, String>> fieldNameFinder = null;
 			free: if (!MAPPINGS_TINY_BASE.exists()) {
+				if (MAPPINGS_TINY.exists()) {
+					MAPPINGS_TINY.delete();
+				}
+				Files.deleteIfExists(decompileComments);
+				FileUtils.deleteDirectory(commentSources.toFile());
+
 				Map<String, List<MappingFile>> versionToMappings = new HashMap<>();
 
 				for (ListIterator<MappingFile> it = mappingFiles.listIterator(); it.hasNext();) {
@@ -152,6 +194,9 @@ public class MappingsProvider extends LogicalDependencyProvider {
 					versionToMappings.computeIfAbsent(file.minecraftVersion, k -> new ArrayList<>()).add(file);
 				}
 
+				//Comments are only needed for decompiling, so if they can be read by their Intermediary names later they're left until then
+				boolean lazyComments = mappingFiles.stream().allMatch(file -> file.type != MappingType.Enigma && (file.type != MappingType.TinyV2 || file.getNamespaces().contains("intermediary")));
+
 				for (List<MappingFile> mappings : versionToMappings.values()) {
 					mappings.sort((fileA, fileB) -> {
 						if (fileA.type == fileB.type) return 0;
@@ -180,6 +225,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 				Optional<MappingFile> interProvider = searchForIntermediaries(versionToMappings.getOrDefault(minecraftVersion, Collections.emptyList()), minecraftProvider.getNeededHeaders());
 
 				LazyMappings intermediaryMaker;
+				File intermediarySource;
 				if (interProvider.isPresent()) {
 					MappingFile mappings = interProvider.get();
 
@@ -199,7 +245,8 @@ public class MappingsProvider extends LogicalDependencyProvider {
 							break free;
 
 						case TinyV2:
-							TinyV2toV1.convert(mappings.origin.toPath(), MAPPINGS_TINY_BASE.toPath(), parameterNames, decompileComments);
+							TinyV2toV1.convert(mappings.origin.toPath(), MAPPINGS_TINY_BASE.toPath(), parameterNames);
+							writeCommentSources(mappingFiles);
 							break free;
 
 						case Enigma:
@@ -211,6 +258,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 					project.getLogger().lifecycle(":Using intermediaries from " + mappings.origin.getName());
 					intermediaryMaker = mappings;
+					intermediarySource = mappings.origin;
 				} else {
 					if (!intermediaryNames.exists()) {//Grab intermediary mappings from Github
 						project.getLogger().lifecycle(":Downloading intermediaries to " + intermediaryNames.getName());
@@ -225,177 +273,62 @@ public class MappingsProvider extends LogicalDependencyProvider {
 					}
 
 					intermediaryMaker = () -> new DirectMappings(intermediaryNames.toPath());
+					intermediarySource = intermediaryNames;
 				}
 
-				MappingBlob mappings = new MappingBlob();
-				try (ActiveMappings intermediaries = intermediaryMaker.open()) {
-					TinyReader.fillFromColumn(intermediaries.getMappings(), "intermediary", mappings);
-
-					if (minecraftProvider.needsIntermediaries()) minecraftProvider.giveIntermediaries(intermediaries.getMappings());
+				//The merged result after each layer is saved, so a change further up the stack only needs to replay from there
+				String[] checkpoints = new String[mappingFiles.size()];
+				HashCode stackHash = Hashing.sha256().newHasher().putBytes(hashFile(intermediarySource).asBytes()).putUnencodedChars(minecraftProvider.getMergeStrategy().name()).putBoolean(lazyComments).hash();
+				for (int i = 0; i < checkpoints.length; i++) {
+					MappingFile mapping = mappingFiles.get(i);
+					stackHash = Hashing.sha256().newHasher().putBytes(stackHash.asBytes()).putUnencodedChars(mapping.minecraftVersion).putBytes(hashFile(mapping.origin).asBytes()).hash();
+					checkpoints[i] = stackHash.toString();
 				}
-				Map<String, MappingBlob> versionToIntermediaries = new HashMap<>();
-				Map<String, JarMergeOrder> versionToMerging = new HashMap<>();
-
-				for (MappingFile mapping : mappingFiles) {
-					project.getLogger().lifecycle(":loading " + mapping.origin.getName());
-
-					MappingBlob gains = new MappingBlob();
-					boolean nativeNames = false;
-
-					switch (mapping.type) {
-					case Enigma: {
-						EnigmaReader.readEnigma(mapping.origin.toPath(), gains);
-
-						if (gains.stream().parallel().noneMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_"))) {
-							nativeNames = true;
-						} else {
-							assert gains.stream().parallel().filter(classMapping -> classMapping.to() != null).allMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_") || classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")):
-								gains.stream().filter(classMapping -> classMapping.to() != null && !classMapping.from.startsWith("net/minecraft/class_") && !classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")).map(classMapping -> classMapping.from).collect(Collectors.joining(", ", "Found unexpected initial mapping classes: [", "]"));
-							assert gains.streamMethods().parallel().filter(method -> method.name() != null).allMatch(method -> method.fromName.startsWith("method_") || method.fromName.equals(method.name())):
-								gains.streamMethods().filter(method -> method.name() != null && !method.fromName.startsWith("method_")).map(method -> method.fromName + method.fromDesc).collect(Collectors.joining(", ", "Found unexpected method mappings: ", "]"));
-							assert gains.streamFields().parallel().filter(field -> field.name() != null).allMatch(field -> field.fromName.startsWith("field_")):
-								gains.streamFields().filter(field -> field.name() != null && !field.fromName.startsWith("field_")).map(field -> field.fromName).collect(Collectors.joining(", ", "Found unexpected field mappings: ", "]"));
-						}
 
-						String from;
-						Path contextJar;
-						if (minecraftVersion.equals(mapping.minecraftVersion)) {
-							if (nativeNames) {
-								if (minecraftProvider.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
-								from = Iterables.getOnlyElement(minecraftProvider.getNativeHeaders());
-								contextJar = minecraftProvider.getMergedJar();
-							} else {
-								from = "intermediary";
-								try (ActiveMappings intermediaries = intermediaryMaker.open()) {
-									contextJar = MapJarsTiny.makeInterJar(project, extension, minecraftProvider, Optional.of(intermediaries.getMappings()));
-								}
-							}
-						} else {
-							MinecraftVersion version = MinecraftProvider.makeMergedJar(project, extension, mapping.minecraftVersion, Optional.empty(), JarMergeOrder.INDIFFERENT);
-
-							if (nativeNames) {
-								if (version.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
-								from = Iterables.getOnlyElement(version.getNativeHeaders());
-								contextJar = version.getMergedJar();
-							} else {
-								from = "intermediary";
-								contextJar = MapJarsTiny.makeInterJar(project, extension, version, //See if we've actually got the old Intermediaries per chance too
-										searchForIntermediaries(versionToMappings.getOrDefault(mapping.minecraftVersion, Collections.emptyList()), version.getNeededHeaders()).map(mappingFile -> mappingFile.origin.toPath()));
-							}
-						}
-
-						Path specialisedMappings = MAPPINGS_DIR.toPath().resolve(FilenameUtils.removeExtension(mapping.origin.getName()) + "-specialised.jar");
-						try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:" + specialisedMappings.toUri()), Collections.singletonMap("create", "true"))) {
-							Path destination = fs.getPath("mappings/mappings.tiny");
-
-							Files.createDirectories(destination.getParent());
-							MapSpecializedMethodsCommand.run(contextJar, "enigma", mapping.origin.toPath(), "tinyv2:" + from + ":named", destination);
-						} catch (URISyntaxException e) {
-							throw new IllegalStateException("Cannot convert jar path to URI?", e);
-						} catch (IOException e) {
-							throw new UncheckedIOException("Error creating mappings jar", e);
-						}
+				MappingBlob checkpoint = null;
+				int resume = checkpoints.length - 2; //There's no need for one from the top of the stack, that's what the base tiny is for
+				for (; resume >= 0; resume--) {
+					checkpoint = readCheckpoint(project.getLogger(), checkpoints[resume]);
 
-						mapping = new MappingFile(specialisedMappings.toFile(), mapping.name, mapping.version, mapping.minecraftVersion, MappingType.TinyV2, ImmutableList.of(from, "named"));
-					}
-
-					case TinyV1:
-					case TinyV2: {
-						String origin;
-						if (mapping.getNamespaces().contains("intermediary")) {
-							origin = "intermediary";
-						} else {
-							JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version));
-							if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
-
-							nativeNames = true;
-							origin = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
-						}
-						assert mapping.getNamespaces().contains("named");
-
-						try (FileSystem fileSystem = FileSystems.newFileSystem(mapping.origin.toPath(), null)) {
-							TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), origin, "named", gains);
-
-							if (mapping.type == MappingType.TinyV2) {
-								UnaryOperator<String> classRemapper;
-								if (!origin.equals(mapping.getNamespaces().get(0))) {
-									MappingBlob nativeToOrigin = new MappingBlob();
-									TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), mapping.getNamespaces().get(0), origin, nativeToOrigin);
-									classRemapper = name -> {
-										String remap = nativeToOrigin.tryMapName(name);
-										return remap != null ? remap : name;
-									};
-								} else {
-									classRemapper = null; //Origin column is the main column, descriptors won't need to be renamed
-								}
-								TinyReader.readComments(fileSystem.getPath("mappings/mappings.tiny"), origin, classRemapper, gains);
-							}
-						}
-						break;
-					}
-
-					case TinyGz: {
-						Collection<String> namespaces = TinyReader.readHeaders(mapping.origin.toPath());
-
-						String origin;
-						if (namespaces.contains("intermediary")) {
-							origin = "intermediary";
-						} else {
-							JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version));
-							if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
-
-							nativeNames = true;
-							origin = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
-						}
-						assert namespaces.contains("named");
-
-						TinyReader.readTiny(mapping.origin.toPath(), origin, "named", gains);
+					if (checkpoint != null) {
+						project.getLogger().lifecycle(":resuming from " + mappingFiles.get(resume).origin.getName());
 						break;
 					}
+				}
 
-					case Tiny: //Should have already enlightened this by now
-						throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
+				MappingBlob mappings;
+				try (ActiveMappings intermediaries = intermediaryMaker.open()) {
+					if (checkpoint != null) {
+						mappings = checkpoint;
+					} else {
+						mappings = new MappingBlob();
+						TinyReader.fillFromColumn(intermediaries.getMappings(), "intermediary", mappings);
 					}
 
-					if (nativeNames) {
-						MappingBlob renamer = versionToIntermediaries.computeIfAbsent(mapping.minecraftVersion, version -> {
-							ActiveMappings mappingsPipe = null;
-							Path intermediaryNames;
-							if (!minecraftVersion.equals(version)) {
-								intermediaryNames = searchForIntermediaries(versionToMappings.getOrDefault(version, Collections.emptyList()), null)
-										.map(mappingFile -> mappingFile.origin.toPath()).orElseGet(() -> getIntermediaries(extension, version));
-							} else {
-								try {
-									mappingsPipe = intermediaryMaker.open();
-								} catch (IOException e) {
-									throw new UncheckedIOException("Error opening Intermediary maker", e);
-								}
-								intermediaryNames = mappingsPipe.getMappings();
-							}
+					if (minecraftProvider.needsIntermediaries()) minecraftProvider.giveIntermediaries(intermediaries.getMappings());
+				}
+				//The merged jar can be searched for field names whilst the mappings are being put together
+				fieldNameFinder = ForkJoinPool.commonPool().submit(() -> new FieldNameFinder().findNames(minecraftProvider.getMergedJar().toFile()));
+				Map<String, JarMergeOrder> versionToMerging = new HashMap<>();
+				List<MappingFile> layerFiles = mappingFiles.subList(resume + 1, mappingFiles.size());
+
+				//Each layer can be read independently, it's only what they need from the user cache and the merging which need to be done in order
+				String[] origins = new String[layerFiles.size()];
+				List<ForkJoinTask<MappingBlob>> reads = new ArrayList<>(origins.length);
+				for (int i = 0; i < origins.length; i++) {
+					MappingFile mapping = layerFiles.get(i);
+					String origin = origins[i] = findOrigin(project, extension, mapping, versionToMerging);
+					reads.add(ForkJoinPool.commonPool().submit(() -> readLayer(project, mapping, origin, lazyComments)));
+				}
 
-							JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(version, v -> MinecraftProvider.findMergeStrategy(project, extension, v));
-							if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
-
-							MappingBlob inters = new MappingBlob();
-							try {
-								TinyReader.readTiny(intermediaryNames, Iterables.getOnlyElement(mergeStrategy.getNativeHeaders()), "intermediary", inters);
-							} catch (IOException e) {
-								throw new UncheckedIOException("Error reading Intermediary mappings for " + version, e);
-							} finally {
-								if (mappingsPipe != null) {
-									try {
-										mappingsPipe.close();
-									} catch (IOException e) {
-										project.getLogger().warn("Error closing Intermediary maker", e);
-									}
-								}
-							}
-							return inters;
-						});
+				List<ForkJoinTask<MappingBlob>> layers = new ArrayList<>(origins.length);
+				for (int i = 0; i < origins.length; i++) {
+					layers.add(finishLayer(project, extension, minecraftProvider, layerFiles.get(i), origins[i], reads.get(i), lazyComments, intermediaryMaker, versionToMappings, versionToMerging));
+				}
 
-						logErroneousMappings(project.getLogger(), gains, renamer);
-						gains = gains.rename(renamer);
-					}
+				int layer = resume;
+				for (ForkJoinTask<MappingBlob> task : layers) {
+					MappingBlob gains = task.join();
 
 					for (Mapping classMapping : gains) {
 						//If the name has been lost since it was named there's no point including it
@@ -455,7 +388,10 @@ public class MappingsProvider extends LogicalDependencyProvider {
 							}
 						}
 					}
+
+					if (++layer < checkpoints.length - 1) writeCheckpoint(mappings, checkpoints[layer]);
 				}
+				pruneCheckpoints(Arrays.asList(checkpoints));
 
 				project.getLogger().lifecycle(":combining mappings");
 				Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> intermediaryMappings;
@@ -464,7 +400,8 @@ public class MappingsProvider extends LogicalDependencyProvider {
 				}
 
 				project.getLogger().lifecycle(":writing " + MAPPINGS_TINY_BASE.getName());
-				try (TinyWriter writer = new TinyWriter(MAPPINGS_TINY_BASE.toPath(), Stream.concat(minecraftProvider.getNeededHeaders().stream(), Stream.of("named")).toArray(String[]::new))) {
+				String[] namespaces = Stream.concat(minecraftProvider.getNeededHeaders().stream(), Stream.of("named")).toArray(String[]::new);
+				try (TinyWriter writer = new TinyWriter(MAPPINGS_TINY_BASE.toPath(), namespaces)) {
 					for (Entry<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> entry : intermediaryMappings.entrySet()) {
 						String[] classMappings = minecraftProvider.getNeededHeaders().stream().map(entry.getKey()::get).toArray(String[]::new);
 
@@ -507,7 +444,8 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 							if (Arrays.stream(methodMappings).skip(1).anyMatch(Objects::nonNull)) {
 								Method methodMapping = mapping.method(methodMappings[0]);
-								writer.acceptMethod(className, methodMappings[0].getDesc(), Stream.concat(Arrays.stream(methodMappings).map(nullSafe(EntryTriple::getName)), Stream.of(methodMapping.nameOr(methodMappings[0].getName()))).toArray(String[]::new));
+								String[] names = Stream.concat(Arrays.stream(methodMappings).map(nullSafe(EntryTriple::getName)), Stream.of(methodMapping.nameOr(methodMappings[0].getName()))).toArray(String[]::new);
+								writer.acceptMethod(className, methodMappings[0].getDesc(), names);
 							}
 						}
 
@@ -516,7 +454,8 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 							if (!Arrays.stream(fieldMappings).skip(1).filter(Objects::nonNull).map(EntryTriple::getName).allMatch(Predicate.isEqual(fieldMappings[0].getName()))) {
 								Field fieldMapping = mapping.field(fieldMappings[0]);
-								writer.acceptField(className, fieldMappings[0].getDesc(), Stream.concat(Arrays.stream(fieldMappings).map(nullSafe(EntryTriple::getName)), Stream.of(fieldMapping.nameOr(fieldMappings[0].getName()))).toArray(String[]::new));
+								String[] names = Stream.concat(Arrays.stream(fieldMappings).map(nullSafe(EntryTriple::getName)), Stream.of(fieldMapping.nameOr(fieldMappings[0].getName()))).toArray(String[]::new);
+								writer.acceptField(className, fieldMappings[0].getDesc(), names);
 							}
 						}
 					}
@@ -524,45 +463,35 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 				if (mappings.hasArgNames()) {
 					project.getLogger().lifecycle(":writing " + parameterNames.getFileName());
-					try (BufferedWriter writer = Files.newBufferedWriter(parameterNames)) {
+					try (ParameterNames.Writer writer = ParameterNames.write(parameterNames)) {
 						for (Mapping mapping : mappings) {
 							for (Method method : mapping.methodsWithArgs()) {
 								if (!method.hasArgNames()) continue; //Just comments for the arguments
 
-								writer.write(mapping.toOr(mapping.from));
-								writer.write('/');
-								writer.write(method.fromName);
-								writer.write(method.fromDesc);
-								writer.newLine();
-
-								method.<IOException>iterateArgs((index, arg) -> {
-									assert arg != null; //Should be skipping nulls
-
-									writer.write('\t');
-									writer.write(Integer.toString(index));
-									writer.write(':');
-									writer.write(' ');
-									writer.write(arg);
-									writer.newLine();
+								String[][] args = new String[1][];
+								method.iterateArgs((index, arg) -> {
+									//The args are iterated backwards so the biggest index is first
+									if (args[0] == null) args[0] = new String[index + 1];
+									args[0][index] = arg;
 								});
+
+								writer.accept(mapping.toOr(mapping.from) + '/' + method.fromName + method.fromDesc, args[0]);
 							}
 						}
+
+						writer.commit();
 					}
 				}
 
-				if (mappings.hasComments()) {
+				if (lazyComments) {
+					writeCommentSources(mappingFiles);
+				} else if (mappings.hasComments()) {
 					project.getLogger().lifecycle(":writing " + decompileComments.getFileName());
 					try (BufferedWriter writer = Files.newBufferedWriter(decompileComments)) {
 						TinyV2toV1.writeComments(writer, mappings);
 					}
 				}
 
-				if (MAPPINGS_TINY.exists()) {
-					MAPPINGS_TINY.delete();
-				}
-
-				//If we've successfully joined all the mappings together, save the stack
-				if (!knownStack && mappingFiles.size() > 1) writeStackHistory(mappingsVersion);
 			}
 
 			assert MAPPINGS_TINY_BASE.exists();
@@ -570,56 +499,15 @@ public class MappingsProvider extends LogicalDependencyProvider {
 			assert !MAPPINGS_TINY.exists();
 
 			project.getLogger().lifecycle(":populating field names");
-			String namespace;
-			switch (minecraftProvider.getMergeStrategy()) {
-			case FIRST:
-				namespace = "official";
-				break;
-
-			case LAST:
-				namespace = "intermediary";
-				break;
-
-			case CLIENT_ONLY:
-				namespace = "client";
-				break;
-
-			case SERVER_ONLY:
-				namespace = "server";
-				break;
-
-			case INDIFFERENT:
-			default:
-				throw new IllegalStateException("Unexpected jar merge strategy " + minecraftProvider.getMergeStrategy());
-			}
-			CommandProposeFieldNames.run(minecraftProvider.getMergedJar().toFile(), MAPPINGS_TINY_BASE, MAPPINGS_TINY, namespace, "named", extension.getFieldInferenceFilter());
-			CommandCorrectMappingUnions.run(MAPPINGS_TINY.toPath(), "intermediary", "named");
+			Map<EntryTriple, String> fieldNames = fieldNameFinder != null ? fieldNameFinder.join() : new FieldNameFinder().findNames(minecraftProvider.getMergedJar().toFile());
+			proposeNames(project.getLogger(), MAPPINGS_TINY_BASE.toPath(), MAPPINGS_TINY.toPath(), getJarNamespace(minecraftProvider.getMergeStrategy()), fieldNames, extension.getFieldInferenceFilter());
 		} else {
 			if (minecraftProvider.needsIntermediaries()) minecraftProvider.giveIntermediaries(MAPPINGS_TINY.toPath());
 		}
 
 		if (Files.exists(parameterNames)) {
 			//Merge the tiny mappings with parameter names
-			Map<String, String[]> lines = new HashMap<>();
-
-			try (BufferedReader reader = Files.newBufferedReader(parameterNames)) {
-				for (String line = reader.readLine(), current = null; line != null; line = reader.readLine()) {
-					if (current == null || line.charAt(0) != '\t') {
-						current = line;
-					} else {
-						int split = line.indexOf(':'); //\tno: name
-						int number = Integer.parseInt(line.substring(1, split));
-						String name = line.substring(split + 2);
-
-						String[] lineSet = lines.get(current);
-						if (lineSet == null) {
-							//The args are written backwards so the biggest index is first
-							lines.put(current, lineSet = new String[number + 1]);
-						}
-						lineSet[number] = name;
-					}
-				}
-			}
+			ParameterNames.check(parameterNames);
 
 			mcRemappingFactory = (fromM, toM) -> new IMappingProvider() {
 				private final IMappingProvider normal = TinyRemapperMappingsHelper.create(extension, getMappings(), fromM, toM);
@@ -628,7 +516,12 @@ public class MappingsProvider extends LogicalDependencyProvider {
 				public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap, Map<String, String[]> localMap) {
 					load(classMap, fieldMap, methodMap);
 					if ("intermediary".equals(fromM)) {
-						localMap.putAll(lines);
+						//Tiny Remapper only takes the map it fills itself, so stream straight into it rather than keeping another copy around
+						try {
+							ParameterNames.read(parameterNames, localMap::put);
+						} catch (IOException e) {
+							throw new UncheckedIOException("Error reading parameter names from " + parameterNames, e);
+						}
 					}
 				}
 
@@ -654,21 +547,190 @@ public class MappingsProvider extends LogicalDependencyProvider {
 			mappingJar = new File(MAPPINGS_DIR, FilenameUtils.removeExtension(MAPPINGS_TINY.getName()) + ".jar");
 
 			if (!mappingJar.exists() || mappingJar.lastModified() < MAPPINGS_TINY.lastModified()) {
-				try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:" + mappingJar.toURI()), Collections.singletonMap("create", "true"))) {
+				try {
+					MappingsJar.write(MAPPINGS_TINY.toPath(), mappingJar.toPath());
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error creating mappings jar", e);
+				}
+			}
+		}
+
+		assert mappingJar.exists() && mappingJar.lastModified() >= MAPPINGS_TINY.lastModified();
+		addDependency(mappingJar, project, Constants.MAPPINGS);
+	}
+
+	private static String findNativeHeader(Project project, LoomGradleExtension extension, String version, Map<String, JarMergeOrder> versionToMerging) {
+		JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(version, v -> MinecraftProvider.findMergeStrategy(project, extension, v));
+		if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
+
+		return Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
+	}
+
+	/** Find the namespace the given mappings should be read from, or {@code null} for Enigma mappings which have to be read first to know */
+	private static String findOrigin(Project project, LoomGradleExtension extension, MappingFile mapping, Map<String, JarMergeOrder> versionToMerging) throws IOException {
+		Collection<String> namespaces;
+		switch (mapping.type) {
+		case Enigma:
+			return null;
+
+		case TinyV1:
+		case TinyV2:
+			namespaces = mapping.getNamespaces();
+			break;
+
+		case TinyGz:
+			namespaces = TinyReader.readHeaders(mapping.origin.toPath());
+			break;
+
+		default:
+		case Tiny: //Should have already enlightened this by now
+			throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
+		}
+		assert namespaces.contains("named");
+
+		return namespaces.contains("intermediary") ? "intermediary" : findNativeHeader(project, extension, mapping.minecraftVersion, versionToMerging);
+	}
+
+	private static MappingBlob readLayer(Project project, MappingFile mapping, String origin, boolean lazyComments) throws IOException {
+		project.getLogger().lifecycle(":loading " + mapping.origin.getName());
+
+		MappingBlob gains = new MappingBlob();
+		switch (mapping.type) {
+		case Enigma:
+			EnigmaReader.readEnigmaParallel(mapping.origin.toPath(), gains);
+			break;
+
+		case TinyV1:
+		case TinyV2:
+			readTinyJar(mapping.origin.toPath(), mapping.type, origin, lazyComments, gains);
+			break;
+
+		case TinyGz:
+			TinyReader.readTiny(mapping.origin.toPath(), origin, "named", gains);
+			break;
+
+		case Tiny:
+		default:
+			throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
+		}
+
+		return gains;
+	}
+
+	private static void readTinyJar(Path jar, MappingType type, String origin, boolean lazyComments, MappingBlob gains) throws IOException {
+		try (FileSystem fileSystem = FileSystems.newFileSystem(jar, null)) {
+			if (type == MappingType.TinyV2) {//Names, arguments and comments can all be read in a single pass
+				TinyReader.readTinyV2(fileSystem.getPath("mappings/mappings.tiny"), new Projection(origin, "named", gains, !lazyComments));
+			} else {
+				TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), origin, "named", gains);
+			}
+		}
+	}
+
+	/**
+	 * Find anything else the given layer needs from the user cache before submitting the rest of its loading. This is done on the calling thread,
+	 * one layer at a time, so that producing the context jars never races over shared files nor waits on itself from within the common pool.
+	 */
+	private ForkJoinTask<MappingBlob> finishLayer(Project project, LoomGradleExtension extension, MinecraftProvider minecraftProvider, MappingFile mapping, String origin, ForkJoinTask<MappingBlob> read,
+			boolean lazyComments, LazyMappings intermediaryMaker, Map<String, List<MappingFile>> versionToMappings, Map<String, JarMergeOrder> versionToMerging) throws IOException {
+		boolean nativeNames;
+		String from;
+		Path contextJar;
+
+		if (mapping.type == MappingType.Enigma) {
+			MappingBlob gains = read.join();
+
+			if (gains.stream().parallel().noneMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_"))) {
+				nativeNames = true;
+			} else {
+				nativeNames = false;
+
+				assert gains.stream().parallel().filter(classMapping -> classMapping.to() != null).allMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_") || classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")):
+					gains.stream().filter(classMapping -> classMapping.to() != null && !classMapping.from.startsWith("net/minecraft/class_") && !classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")).map(classMapping -> classMapping.from).collect(Collectors.joining(", ", "Found unexpected initial mapping classes: [", "]"));
+				assert gains.streamMethods().parallel().filter(method -> method.name() != null).allMatch(method -> method.fromName.startsWith("method_") || method.fromName.equals(method.name())):
+					gains.streamMethods().filter(method -> method.name() != null && !method.fromName.startsWith("method_")).map(method -> method.fromName + method.fromDesc).collect(Collectors.joining(", ", "Found unexpected method mappings: ", "]"));
+				assert gains.streamFields().parallel().filter(field -> field.name() != null).allMatch(field -> field.fromName.startsWith("field_")):
+					gains.streamFields().filter(field -> field.name() != null && !field.fromName.startsWith("field_")).map(field -> field.fromName).collect(Collectors.joining(", ", "Found unexpected field mappings: ", "]"));
+			}
+
+			if (minecraftVersion.equals(mapping.minecraftVersion)) {
+				if (nativeNames) {
+					if (minecraftProvider.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
+					from = Iterables.getOnlyElement(minecraftProvider.getNativeHeaders());
+					contextJar = minecraftProvider.getMergedJar();
+				} else {
+					from = "intermediary";
+					try (ActiveMappings intermediaries = intermediaryMaker.open()) {
+						contextJar = MapJarsTiny.makeInterJar(project, extension, minecraftProvider, Optional.of(intermediaries.getMappings()));
+					}
+				}
+			} else {
+				MinecraftVersion version = MinecraftProvider.makeMergedJar(project, extension, mapping.minecraftVersion, Optional.empty(), JarMergeOrder.INDIFFERENT);
+
+				if (nativeNames) {
+					if (version.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
+					from = Iterables.getOnlyElement(version.getNativeHeaders());
+					contextJar = version.getMergedJar();
+				} else {
+					from = "intermediary";
+					contextJar = MapJarsTiny.makeInterJar(project, extension, version, //See if we've actually got the old Intermediaries per chance too
+							searchForIntermediaries(versionToMappings.getOrDefault(mapping.minecraftVersion, Collections.emptyList()), version.getNeededHeaders()).map(mappingFile -> mappingFile.origin.toPath()));
+				}
+			}
+		} else {
+			nativeNames = !"intermediary".equals(origin);
+			from = origin;
+			contextJar = null;
+		}
+
+		LazyMappings renamerSource;
+		String renamerOrigin;
+		if (nativeNames) {
+			renamerOrigin = findNativeHeader(project, extension, mapping.minecraftVersion, versionToMerging);
+
+			if (minecraftVersion.equals(mapping.minecraftVersion)) {
+				renamerSource = intermediaryMaker;
+			} else {
+				Path intermediaryNames = searchForIntermediaries(versionToMappings.getOrDefault(mapping.minecraftVersion, Collections.emptyList()), null)
+						.map(mappingFile -> mappingFile.origin.toPath()).orElseGet(() -> getIntermediaries(extension, mapping.minecraftVersion));
+				renamerSource = () -> new DirectMappings(intermediaryNames);
+			}
+		} else {
+			renamerSource = null;
+			renamerOrigin = null;
+		}
+
+		return ForkJoinPool.commonPool().submit(() -> {
+			MappingBlob gains = read.join();
+
+			if (contextJar != null) {
+				Path specialisedMappings = MAPPINGS_DIR.toPath().resolve(FilenameUtils.removeExtension(mapping.origin.getName()) + "-specialised.jar");
+				try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:" + specialisedMappings.toUri()), Collections.singletonMap("create", "true"))) {
 					Path destination = fs.getPath("mappings/mappings.tiny");
 
 					Files.createDirectories(destination.getParent());
-					Files.copy(MAPPINGS_TINY.toPath(), destination, StandardCopyOption.REPLACE_EXISTING);
+					MapSpecializedMethodsCommand.run(contextJar, "enigma", mapping.origin.toPath(), "tinyv2:" + from + ":named", destination);
 				} catch (URISyntaxException e) {
 					throw new IllegalStateException("Cannot convert jar path to URI?", e);
 				} catch (IOException e) {
 					throw new UncheckedIOException("Error creating mappings jar", e);
 				}
+
+				readTinyJar(specialisedMappings, MappingType.TinyV2, from, lazyComments, gains);
 			}
-		}
 
-		assert mappingJar.exists() && mappingJar.lastModified() >= MAPPINGS_TINY.lastModified();
-		addDependency(mappingJar, project, Constants.MAPPINGS);
+			if (nativeNames) {
+				MappingBlob renamer = new MappingBlob(); //Each layer reads its own, as they can't be shared between threads
+				try (ActiveMappings intermediaries = renamerSource.open()) {
+					TinyReader.readTiny(intermediaries.getMappings(), renamerOrigin, "intermediary", renamer);
+				}
+
+				logErroneousMappings(project.getLogger(), gains, renamer);
+				gains = gains.rename(renamer);
+			}
+
+			return gains;
+		});
 	}
 
 	private static Optional<MappingFile> searchForIntermediaries(List<MappingFile> mappings, Collection<String> interHeaders) {
@@ -781,115 +843,171 @@ public class MappingsProvider extends LogicalDependencyProvider {
 		return thing -> thing != null ? test.apply(thing) : null;
 	}
 
-	private String readStackHistory() {
-		if (Files.notExists(stackHistory)) {
-			return "1";
-		} else {
-			List<String> expected = mappingFiles.stream().map(mappings -> mappings.name + '-' + mappings.version + ' ' + mappings.minecraftVersion).collect(Collectors.toList());
-			assert !expected.isEmpty();
-
-			try (BufferedReader reader = Files.newBufferedReader(stackHistory)) {
-				String currentVersion = reader.readLine();
-				String newestVersion = currentVersion;
-				int currentPosition = 0;
-				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-					assert !line.isEmpty();
-
-					if (line.charAt(0) != '\t') {
-						if (currentPosition == expected.size()) {
-							assert currentVersion != null;
-							knownStack = true;
-							return currentVersion;
-						}
+	private static String getJarNamespace(JarMergeOrder mergeStrategy) {
+		switch (mergeStrategy) {
+		case FIRST:
+			return "official";
 
-						currentVersion = line;
-						currentPosition = 0;
-					} else if (currentVersion != null) {
-						assert line.charAt(0) == '\t';
+		case LAST:
+			return "intermediary";
 
-						if (currentPosition >= expected.size() || !line.regionMatches(1, expected.get(currentPosition), 0, line.length() - 1)) {
-							currentVersion = null;
-						} else {
-							currentPosition++;
-						}
-					}
+		case CLIENT_ONLY:
+			return "client";
+
+		case SERVER_ONLY:
+			return "server";
+
+		case INDIFFERENT:
+		default:
+			throw new IllegalStateException("Unexpected jar merge strategy " + mergeStrategy);
+		}
+	}
+
+	/**
+	 * Write the named mappings from the given base mappings, giving fields the names proposed for them from the jar where the filter allows,
+	 * and methods which are unions of others in different hierarchies the name they've been given in any of them.
+	 */
+	private static void proposeNames(Logger logger, Path base, Path named, String jarNamespace, Map<EntryTriple, String> fieldNames, NameAcceptor fieldInferenceFilter) throws IOException {
+		Mappings mappings;
+		try (InputStream in = Files.newInputStream(base)) {
+			mappings = net.fabricmc.mappings.MappingsProvider.readTinyMappings(in, false);
+		}
+
+		List<String> namespaces = new ArrayList<>(mappings.getNamespaces());
+		int namedColumn = namespaces.indexOf("named");
+		Map<String, String> unionNames = findUnionNames(logger, mappings.getMethodEntries());
+
+		try (TinyWriter writer = new TinyWriter(named, namespaces.toArray(new String[0]))) {
+			for (ClassEntry entry : mappings.getClassEntries()) {
+				writer.acceptClass(namespaces.stream().map(entry::get).toArray(String[]::new));
+			}
+
+			for (MethodEntry entry : mappings.getMethodEntries()) {
+				EntryTriple[] methods = namespaces.stream().map(entry::get).toArray(EntryTriple[]::new);
+				String[] names = Arrays.stream(methods).map(nullSafe(EntryTriple::getName)).toArray(String[]::new);
+
+				EntryTriple intermediary = entry.get("intermediary");
+				String union = intermediary != null ? unionNames.get(intermediary.getName()) : null;
+				if (union != null) names[namedColumn] = union;
+
+				writer.acceptMethod(methods[0].getOwner(), methods[0].getDesc(), names);
+			}
+
+			for (FieldEntry entry : mappings.getFieldEntries()) {
+				EntryTriple[] fields = namespaces.stream().map(entry::get).toArray(EntryTriple[]::new);
+				String[] names = Arrays.stream(fields).map(nullSafe(EntryTriple::getName)).toArray(String[]::new);
+
+				EntryTriple jarField = entry.get(jarNamespace);
+				String proposal = jarField != null ? fieldNames.get(jarField) : null;
+				if (proposal != null && fieldInferenceFilter.accept(jarField.getName(), names[namedColumn], proposal)) {
+					names[namedColumn] = proposal;
 				}
 
-				return Integer.toString(Integer.parseUnsignedInt(newestVersion) + 1);
-			} catch (IOException e) {
-				throw new UncheckedIOException("Error reading stack history file at " + stackHistory, e);
+				writer.acceptField(fields[0].getOwner(), fields[0].getDesc(), names);
 			}
 		}
 	}
 
-	private void writeStackHistory(String version) {
-		assert !knownStack; //No need to go through all this if it's already in the history
+	/** Find the name each method sharing an Intermediary name should have, for those which have only been named in some of the classes they're in */
+	private static Map<String, String> findUnionNames(Logger logger, Collection<MethodEntry> methods) {
+		Map<String, Set<String>> unions = new HashMap<>();
 
-		StringBuilder addition = new StringBuilder(version).append('\n');
+		for (MethodEntry method : methods) {
+			EntryTriple intermediary = method.get("intermediary");
+			if (intermediary == null || !intermediary.getName().startsWith("method_")) continue;
 
-		for (MappingFile mapping : mappingFiles) {
-			addition.append('\t').append(mapping.name).append('-').append(mapping.version).append(' ').append(mapping.minecraftVersion).append('\n');
+			EntryTriple named = method.get("named");
+			Set<String> names = unions.computeIfAbsent(intermediary.getName(), k -> new HashSet<>());
+			if (named != null && !named.getName().equals(intermediary.getName())) names.add(named.getName());
 		}
 
-		byte data[] = addition.toString().getBytes(StandardCharsets.UTF_8);
-		ByteBuffer active;
-		if (data.length >= 4096) {
-			active = ByteBuffer.wrap(data);
-		} else {
-			active = ByteBuffer.allocate(4096);
-			active.put(data);
-			active.flip();
+		Map<String, String> out = new HashMap<>();
+		for (Entry<String, Set<String>> entry : unions.entrySet()) {
+			switch (entry.getValue().size()) {
+			case 0: //Not named anywhere
+				break;
+
+			case 1:
+				out.put(entry.getKey(), Iterables.getOnlyElement(entry.getValue()));
+				break;
+
+			default:
+				logger.warn("Methods sharing " + entry.getKey() + " have been given different names: " + entry.getValue());
+				break;
+			}
 		}
-		assert active.limit() == data.length;
 
-		ByteBuffer passive = ByteBuffer.allocate(active.capacity());
+		return out;
+	}
+
+	private static HashCode hashFile(File file) throws IOException {
+		return MoreFiles.asByteSource(file.toPath()).hash(Hashing.sha256());
+	}
 
-		try (FileChannel channel = FileChannel.open(stackHistory, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
-			assert channel.position() == 0;
+	private static String hashInputs(Logger logger, List<MappingFile> mappingFiles, JarMergeOrder mergeStrategy, NameAcceptor fieldInferenceFilter) throws IOException {
+		Hasher hasher = Hashing.sha256().newHasher();
 
-			if (passive.capacity() != active.capacity()) {//It's important the amount of the file read is the same as the amount written
-				throw new IllegalArgumentException("Inconsistent capacities between buffers: " + passive.capacity() + " and " + active.capacity());
+		for (MappingFile mapping : mappingFiles) {
+			hasher.putUnencodedChars(mapping.minecraftVersion).putByte((byte) 0);
+			hasher.putBytes(hashFile(mapping.origin).asBytes());
+		}
+
+		hasher.putUnencodedChars(mergeStrategy.name()).putByte((byte) 0);
+		if (!hashFilter(hasher, fieldInferenceFilter)) {
+			if (!warnedUnhashable) {
+				warnedUnhashable = true;
+				logger.warn("Field inference filter " + fieldInferenceFilter + " depends on state which can't be hashed, the mappings will only be rebuilt when it or Loom change."
+						+ " Set alwaysRebuildMappings to rebuild them every time instead.");
 			}
 
-			long offset = passive.capacity() - active.limit(); //Account for reading/writing not necessarily being at the same start/end positions
-			assert offset >= 0;
-			do {
-				long position = channel.position();
-				if (position > 0 && offset > 0) {
-					channel.position(position + offset);
-				}
+			//Best that can be done is assuming it'll only behave differently when it's been changed
+			hasher.putUnencodedChars(String.valueOf(MappingsProvider.class.getPackage().getImplementationVersion()));
+		}
 
-				passive.clear(); //Ensure the buffer's limit == capacity, as well as position == 0
+		return hasher.hash().toString().substring(0, 16);
+	}
 
-				int read;
-				do {
-					read = channel.read(passive);
-				} while (read != -1 && passive.hasRemaining());
-				//System.out.println("Read in \"" + new String(passive.array(), 0, passive.position()) + '"');
-				passive.flip();
+	/** Hash the behaviour of the given filter via its bytecode and any captured values, returning {@code false} if it has state which can't be hashed */
+	private static boolean hashFilter(Hasher hasher, NameAcceptor filter) throws IOException {
+		Object source = filter;
+		if (Proxy.isProxyClass(source.getClass())) {//Closures get converted via a proxy with a throwaway name
+			InvocationHandler handler = Proxy.getInvocationHandler(source);
+			if (handler instanceof ConversionHandler) source = ((ConversionHandler) handler).getDelegate();
+		}
 
-				channel.position(position);
+		Class<?> type = source.getClass();
+		String name = type.getName();
+		int lambda = name.indexOf("$$Lambda$");
+		if (lambda > 0) name = name.substring(0, lambda); //Lambdas only have a name unique to the run, but their bodies are in the class they came from
 
-				//System.out.println("Writing \"" + new String(active.array(), active.position(), active.remaining()) + '"');
-				while (active.hasRemaining()) {
-					channel.write(active);
-				}
+		hasher.putUnencodedChars(name).putByte((byte) 0);
+		try (InputStream in = type.getResourceAsStream('/' + name.replace('.', '/') + ".class")) {
+			if (in == null) return false; //Without the code there's no telling what it does
+			ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+		}
 
-				ByteBuffer swap = passive;
-				passive = active;
-				active = swap;
-			} while (active.limit() >= active.capacity());
+		for (java.lang.reflect.Field field : type.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())) continue;
 
-			while (active.hasRemaining()) {
-				//System.out.println("Writing final \"" + new String(active.array(), active.position(), active.remaining()) + '"');
-				channel.write(active);
+			Object value;
+			try {
+				field.setAccessible(true);
+				value = field.get(source);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return false;
+			}
+
+			if (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum<?>) {
+				hasher.putUnencodedChars(field.getName()).putByte((byte) 0).putUnencodedChars(value.toString()).putByte((byte) 0);
+			} else if (value != null) {
+				return false; //Anything more complicated could change without the filter itself doing so
 			}
-		} catch (IOException e) {
-			throw new UncheckedIOException("Error writing stack history file to " + stackHistory, e);
 		}
+
+		return true;
 	}
 
-	private void initFiles(LoomGradleExtension extension, Logger logger, MinecraftProvider minecraftProvider) {
+	private void initFiles(LoomGradleExtension extension, Logger logger, MinecraftProvider minecraftProvider) throws IOException {
 		MAPPINGS_DIR = new File(extension.getUserCache(), "mappings/" + minecraftProvider.minecraftVersion);
 
 		switch (mappingFiles.size()) {
@@ -903,17 +1021,17 @@ public class MappingsProvider extends LogicalDependencyProvider {
 			MappingFile mappings = Iterables.getOnlyElement(mappingFiles);
 			logger.lifecycle(":setting up mappings (" + mappings.name + ' ' + mappings.version + '@' + mappings.minecraftVersion + ')');
 			mappingsName = mappings.name;
-			mappingsVersion = mappings.version;
+			//The same version doesn't promise the same contents (nor the same processing of them)
+			mappingsVersion = mappings.version + '-' + hashInputs(logger, mappingFiles, minecraftProvider.getMergeStrategy(), extension.getFieldInferenceFilter());
 			minecraftVersion = mappings.minecraftVersion;
 			break;
 		}
 
 		default: {
 			logger.lifecycle(":setting up mappings (" + mappingFiles.size() + " files in stack)");
-			stackHistory = new File(MAPPINGS_DIR, "stack.history").toPath();
 
 			mappingsName = "stack";
-			mappingsVersion = readStackHistory();
+			mappingsVersion = hashInputs(logger, mappingFiles, minecraftProvider.getMergeStrategy(), extension.getFieldInferenceFilter());
 			//The stack could be made up of multiple Minecraft versions, so we'll just use the version the stack will run on
 			minecraftVersion = minecraftProvider.minecraftVersion;
 			break;
@@ -923,19 +1041,164 @@ public class MappingsProvider extends LogicalDependencyProvider {
 		intermediaryNames = new File(MAPPINGS_DIR, INTERMEDIARY + "-intermediary.tiny");
 		MAPPINGS_TINY_BASE = new File(MAPPINGS_DIR, mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + "-base.tiny");
 		MAPPINGS_TINY = new File(MAPPINGS_DIR, mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + ".tiny");
-		parameterNames = new File(MAPPINGS_DIR, mappingsName + "-params-" + minecraftVersion + '-' + mappingsVersion).toPath();
+		parameterNames = new File(MAPPINGS_DIR, mappingsName + "-params-" + minecraftVersion + '-' + mappingsVersion + ".bin").toPath();
 		decompileComments = parameterNames.resolveSibling(mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + "-decomp.tiny");
+		commentSources = parameterNames.resolveSibling(mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + "-decomp-sources");
 
 		MAPPINGS_MIXIN_EXPORT = new File(extension.getProjectBuildCache(), "mixin-map-" + minecraftVersion + '-' + mappingsVersion + ".tiny");
 	}
 
+	/** Copy every Tiny V2 file in the given mappings, as they might not be around for as long as the mappings they went into */
+	private void writeCommentSources(List<MappingFile> mappings) throws IOException {
+		Path temp = Files.createTempDirectory(commentSources.getParent(), commentSources.getFileName().toString());
+
+		try {
+			//Only Tiny V2 files carry comments, which are read in stack order so the first comment for anything is kept as when merging
+			int index = 0;
+			for (MappingFile mapping : mappings) {
+				if (mapping.type == MappingType.TinyV2) Files.copy(mapping.origin.toPath(), temp.resolve(index++ + ".jar"));
+			}
+		} catch (Throwable t) {
+			FileUtils.deleteDirectory(temp.toFile());
+			throw t;
+		}
+
+		FileUtils.deleteDirectory(commentSources.toFile());
+		Files.move(temp, commentSources);
+	}
+
+	private void writeDecompileComments() throws IOException {
+		MappingBlob comments = new MappingBlob(); //Names are taken from the mappings, anything missing is named the same in both
+		TinyReader.readTiny(MAPPINGS_TINY.toPath(), "intermediary", "named", comments);
+
+		IMappingAcceptor firstComment = new IMappingAcceptor() {
+			@Override
+			public void acceptClass(String srcName, String dstName) {
+			}
+
+			@Override
+			public void acceptMethod(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
+			}
+
+			@Override
+			public void acceptMethodArg(String srcClsName, String srcMethodName, String srcMethodDesc, int lvIndex, String dstArgName) {
+				Method method = comments.get(srcClsName).method(new Method(srcMethodName, srcMethodDesc));
+				if (method.arg(lvIndex) == null) comments.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, lvIndex, dstArgName);
+			}
+
+			@Override
+			public void acceptField(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
+			}
+
+			@Override
+			public void acceptClassComment(String className, String comment) {
+				if (!comments.get(className).hasComment()) comments.acceptClassComment(className, comment);
+			}
+
+			@Override
+			public void acceptMethodComment(String className, String methodName, String desc, String comment) {
+				Method method = comments.get(className).method(new Method(methodName, desc));
+				if (!method.hasComment()) comments.acceptMethodComment(className, methodName, desc, comment);
+			}
+
+			@Override
+			public void acceptMethodArgComment(String className, String methodName, String desc, int lvIndex, String comment) {
+				Method method = comments.get(className).method(new Method(methodName, desc));
+				if (!method.argComment(lvIndex).isPresent()) comments.acceptMethodArgComment(className, methodName, desc, lvIndex, comment);
+			}
+
+			@Override
+			public void acceptFieldComment(String className, String fieldName, String desc, String comment) {
+				Field field = comments.get(className).field(new Field(fieldName, desc));
+				if (!field.hasComment()) comments.acceptFieldComment(className, fieldName, desc, comment);
+			}
+		};
+
+		for (int index = 0;; index++) {
+			Path source = commentSources.resolve(index + ".jar");
+			if (Files.notExists(source)) break;
+
+			try (FileSystem fileSystem = FileSystems.newFileSystem(source, null)) {
+				TinyReader.readComments(fileSystem.getPath("mappings/mappings.tiny"), "intermediary", "named", firstComment);
+			}
+		}
+
+		if (comments.hasComments()) {
+			Path temp = Files.createTempFile(decompileComments.getParent(), decompileComments.getFileName().toString(), ".tmp");
+			try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+				TinyV2toV1.writeComments(writer, comments);
+			} catch (Throwable t) {
+				Files.deleteIfExists(temp);
+				throw t;
+			}
+			Files.move(temp, decompileComments, StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			FileUtils.deleteDirectory(commentSources.toFile()); //Nothing to write, so no need to look again next time
+		}
+	}
+
+	private Path getCheckpoint(String key) {
+		return MAPPINGS_DIR.toPath().resolve("checkpoints").resolve(key + ".blob");
+	}
+
+	private MappingBlob readCheckpoint(Logger logger, String key) throws IOException {
+		Path checkpoint = getCheckpoint(key);
+		if (Files.notExists(checkpoint)) return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(checkpoint))))) {
+			MappingBlob mappings = MappingBlob.read(in);
+			Files.setLastModifiedTime(checkpoint, FileTime.fromMillis(System.currentTimeMillis())); //Keep it from being pruned
+			return mappings;
+		} catch (IOException e) {
+			logger.warn("Error reading mappings checkpoint from " + checkpoint, e);
+			Files.deleteIfExists(checkpoint);
+			return null;
+		}
+	}
+
+	private void writeCheckpoint(MappingBlob mappings, String key) throws IOException {
+		Path checkpoint = getCheckpoint(key);
+		Files.createDirectories(checkpoint.getParent());
+
+		Path tempCheckpoint = Files.createTempFile(checkpoint.getParent(), key, ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempCheckpoint))))) {
+			mappings.write(out);
+		} catch (Throwable t) {
+			Files.deleteIfExists(tempCheckpoint);
+			throw t;
+		}
+		Files.move(tempCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/** Delete all but the {@link #MAX_CHECKPOINTS} most recently used checkpoints which aren't from the given stack */
+	private void pruneCheckpoints(Collection<String> current) throws IOException {
+		Path checkpoints = MAPPINGS_DIR.toPath().resolve("checkpoints");
+		if (Files.notExists(checkpoints)) return;
+
+		List<Path> others;
+		try (Stream<Path> files = Files.list(checkpoints)) {
+			others = files.filter(file -> {
+				String name = file.getFileName().toString();
+				return name.endsWith(".blob") && !current.contains(name.substring(0, name.length() - 5));
+			}).sorted(Comparator.comparingLong((Path file) -> file.toFile().lastModified()).reversed()).collect(Collectors.toList());
+		}
+
+		for (Path checkpoint : others.subList(Math.min(others.size(), MAX_CHECKPOINTS), others.size())) {
+			Files.deleteIfExists(checkpoint);
+		}
+	}
+
 	public void clearFiles() {
+		MappingsCache.INSTANCE.invalidate(MAPPINGS_TINY.toPath());
 		MAPPINGS_TINY.delete();
 		MAPPINGS_TINY_BASE.delete();
 		intermediaryNames.delete();
 		try {
 			Files.deleteIfExists(parameterNames);
 			Files.deleteIfExists(decompileComments);
+			FileUtils.deleteDirectory(commentSources.toFile());
+			Files.deleteIfExists(BinaryMappings.storeFor(MAPPINGS_TINY.toPath()));
+			FileUtils.deleteDirectory(new File(MAPPINGS_DIR, "checkpoints"));
 		} catch (IOException e) {
 			e.printStackTrace(); //That's troublesome
 		}
@@ -25,6 +25,7 @@
 package net.fabricmc.loom.providers;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
@@ -41,6 +42,7 @@ import net.fabricmc.loom.dependencies.LogicalDependencyProvider;
 import net.fabricmc.loom.providers.openfine.Openfine;
 import net.fabricmc.loom.util.AccessTransformerHelper;
 import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.JarPostProcessor;
 import net.fabricmc.loom.util.MapJarsTiny;
 import net.fabricmc.stitch.util.Pair;
 
@@ -98,17 +100,29 @@ public class MinecraftMappedProvider extends LogicalDependencyProvider {
         MINECRAFT_INTERMEDIARY_JAR = new File(cache, JarNameFactory.MERGED_INTERMEDIARY.getJarName(jarName));
         MINECRAFT_MAPPED_JAR = new File(cache, JarNameFactory.NAMED.getJarName(jarName));
 
-        if (!getMappedJar().exists() || !getIntermediaryJar().exists() || atChange) {
+        if (!getMappedJar().exists() || !getIntermediaryJar().exists() || atChange || !mappingsProvider.isCacheable()) {
             if (getMappedJar().exists()) {
                 getMappedJar().delete();
             }
-            if (getIntermediaryJar().exists() && !minecraftProvider.getMergedJar().equals(getIntermediaryJar().toPath())) {
-                getIntermediaryJar().delete();
+
+            //Without anything changing the mapped jar afterwards, only the classes whose mappings have changed need remapping again
+            boolean incremental = !atChange && targets.isEmpty() && !extension.hasOptiFine();
+            Path remapIndex = cache.toPath().resolve(Files.getNameWithoutExtension(getIntermediaryJar().getName()) + "-remap.index");
+
+            if (!incremental || !MapJarsTiny.mapJarIncrementally(minecraftProvider, this, project, remapIndex)) {
+                if (getIntermediaryJar().exists() && !minecraftProvider.getMergedJar().equals(getIntermediaryJar().toPath())) {
+                    getIntermediaryJar().delete();
+                }
+                if (extension.hasOptiFine()) Openfine.applyBonusMappings(mappingsProvider);
+
+                //Anything changing the jars is done whilst they're written, rather than rewriting them again afterwards
+                JarPostProcessor interProcessor = new JarPostProcessor(), namedProcessor = new JarPostProcessor();
+                if (!targets.isEmpty()) MapJarsTiny.transform(project, targets, mappingsProvider, interProcessor, namedProcessor);
+                if (extension.hasOptiFine()) namedProcessor.withTransformer(Openfine.makeRemovalTransformer(project.getLogger(), mappingsProvider));
+
+                MapJarsTiny.mapJars(minecraftProvider, this, project, interProcessor, namedProcessor);
+                if (incremental) MapJarsTiny.indexMappedJar(minecraftProvider, this, project, remapIndex);
             }
-            if (extension.hasOptiFine()) Openfine.applyBonusMappings(mappingsProvider);
-            MapJarsTiny.mapJars(minecraftProvider, this, project);
-            if (!targets.isEmpty()) MapJarsTiny.transform(project, targets, this, mappingsProvider);
-            if (extension.hasOptiFine()) Openfine.transformRemovals(project.getLogger(), mappingsProvider, getMappedJar());
         }
 
         if (!MINECRAFT_MAPPED_JAR.exists()) {
@@ -31,6 +31,7 @@ import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 import java.util.zip.ZipError;
+import java.util.zip.ZipException;
 
 import com.google.common.util.concurrent.Callables;
 import com.google.gson.Gson;
@@ -57,8 +58,9 @@ import net.fabricmc.loom.util.HexaFunction;
 import net.fabricmc.loom.util.MinecraftVersionInfo.AssetIndex;
 import net.fabricmc.loom.util.MinecraftVersionInfo.Download;
 import net.fabricmc.loom.util.MinecraftVersionInfo.Library;
+import net.fabricmc.loom.util.ParallelJarMerger;
 import net.fabricmc.loom.util.StaticPathWatcher;
-import net.fabricmc.stitch.merge.JarMerger;
+import net.fabricmc.mappings.Mappings;
 
 public class MinecraftProvider extends PhysicalDependencyProvider implements MinecraftVersionAdaptable {
 	private static final class VersionKey {
@@ -121,7 +123,7 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 					if (!mergedJar.exists()) {
 						try {
 							mergeJars(logger, clientJar, serverJar, mergedJar);
-						} catch (ZipError e) {
+						} catch (ZipError | ZipException e) {
 							DownloadUtil.delete(clientJar);
 							DownloadUtil.delete(serverJar);
 
@@ -144,16 +146,25 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 						JarNamingStrategy nameStrategy = makeNamingStrategy();
 
 						Path interClient = mergedJar.toPath().resolveSibling(JarNameFactory.CLIENT_INTERMEDIARY.getJarName(nameStrategy));
-						if (Files.notExists(interClient)) {
-							//Can't use the library provider yet as the configuration might need more things adding to it
-							Set<File> libraries = getJavaLibraries(project);
-							MapJarsTiny.remapJar(logger, clientJar.toPath(), mappings, false, libraries, interClient, "client");
-						}
-
 						Path interServer = interClient.resolveSibling(JarNameFactory.SERVER_INTERMEDIARY.getJarName(nameStrategy));
-						if (Files.notExists(interServer)) {
-							Set<File> libraries = Collections.emptySet(); //The server contains all its own dependencies
-							MapJarsTiny.remapJar(logger, serverJar.toPath(), mappings, false, libraries, interServer, "server");
+
+						boolean remapClient = Files.notExists(interClient), remapServer = Files.notExists(interServer);
+						if (remapClient || remapServer) {
+							//Both sides can be remapped at once from the same copy of the mappings
+							Mappings intermediaries = MappingsCache.INSTANCE.get(mappings);
+
+							ForkJoinTask<?> clientRemap = !remapClient ? null : ForkJoinPool.commonPool().submit(() -> {
+								//Can't use the library provider yet as the configuration might need more things adding to it
+								Set<File> libraries = getJavaLibraries(project);
+								MapJarsTiny.remapJar(logger, clientJar.toPath(), intermediaries, false, libraries, interClient, "client");
+							});
+
+							if (remapServer) {
+								Set<File> libraries = Collections.emptySet(); //The server contains all its own dependencies
+								MapJarsTiny.remapJar(logger, serverJar.toPath(), intermediaries, false, libraries, interServer, "server");
+							}
+
+							if (clientRemap != null) clientRemap.join();
 						}
 
 						MinecraftProvider.mergeJars(logger, interClient.toFile(), interServer.toFile(), mergedJar);
@@ -517,10 +528,7 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 	private static void mergeJars(Logger logger, File MINECRAFT_CLIENT_JAR, File MINECRAFT_SERVER_JAR, File MINECRAFT_MERGED_JAR) throws IOException {
 		logger.lifecycle(":merging jars");
 
-		try (JarMerger jarMerger = new JarMerger(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR)) {
-			jarMerger.enableSyntheticParamsOffset();
-			jarMerger.merge();
-		}
+		ParallelJarMerger.merge(MINECRAFT_CLIENT_JAR.toPath(), MINECRAFT_SERVER_JAR.toPath(), MINECRAFT_MERGED_JAR.toPath());
 	}
 
 
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MethodEntry;
+
+/**
+ * A read only view of a tiny file which can be loaded straight back into memory without parsing anything.
+ *
+ * <p>The file is laid out as a string table followed by a column of string IDs for each namespace of the classes,
+ * methods and fields. Looking entries up by name is left to {@link MappingIndex}, as with any other mappings.
+ */
+public final class BinaryMappings implements Mappings {
+	private static final int MAGIC = 0x4C4D4231; //LMB1
+	private static final int VERSION = 3;
+	private static final int MODIFIED = 16;
+	private static final int HASH_SIZE = 32;
+	private static final int COUNTS = MODIFIED + 8 + HASH_SIZE;
+	private static final int HEADER_SIZE = COUNTS + 20;
+	private static final int NULL = -1;
+
+	private final ByteBuffer buffer;
+	private final List<String> namespaces;
+	private final int strings, classes, methods, fields;
+	private final int stringOffsets, stringData;
+	private final int classColumns, methodColumns, fieldColumns;
+	private final String[] stringCache;
+
+	public static Path storeFor(Path tinyFile) {
+		return tinyFile.resolveSibling(tinyFile.getFileName().toString() + ".bin");
+	}
+
+	public static boolean isCurrent(Path store, Path source) throws IOException {
+		if (Files.notExists(store) || Files.notExists(source)) return false;
+
+		try (FileChannel channel = FileChannel.open(store, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(COUNTS);
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) return false;
+			}
+			header.flip();
+
+			if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != Files.size(source)) return false;
+			long modified = Files.getLastModifiedTime(source).toMillis();
+			if (header.getLong() == modified) return true;
+
+			//Only the contents can say whether it's really a different file, if it is the same then the new time is kept to save hashing again
+			byte[] hash = new byte[HASH_SIZE];
+			header.get(hash);
+			if (!Arrays.equals(hash, hash(source))) return false;
+
+			channel.write((ByteBuffer) ByteBuffer.allocate(8).putLong(modified).flip(), MODIFIED);
+			return true;
+		}
+	}
+
+	private static byte[] hash(Path source) throws IOException {
+		return MoreFiles.asByteSource(source).hash(Hashing.sha256()).asBytes();
+	}
+
+	/** Read the given store into memory, so nothing is left holding the file open once the mappings are made */
+	public static BinaryMappings open(Path store) throws IOException {
+		return new BinaryMappings(ByteBuffer.wrap(Files.readAllBytes(store)));
+	}
+
+	private BinaryMappings(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.getInt(0) != MAGIC) throw new IOException("Invalid binary mappings header");
+		if (buffer.getInt(4) != VERSION) throw new IOException("Unexpected binary mappings version " + buffer.getInt(4));
+
+		int namespaceCount = buffer.getInt(COUNTS);
+		strings = buffer.getInt(COUNTS + 4);
+		classes = buffer.getInt(COUNTS + 8);
+		methods = buffer.getInt(COUNTS + 12);
+		fields = buffer.getInt(COUNTS + 16);
+
+		stringOffsets = HEADER_SIZE + namespaceCount * 4;
+		classColumns = stringOffsets + (strings + 1) * 4;
+		methodColumns = classColumns + namespaceCount * classes * 4;
+		fieldColumns = methodColumns + namespaceCount * methods * 3 * 4;
+		stringData = fieldColumns + namespaceCount * fields * 3 * 4;
+
+		stringCache = new String[strings];
+		String[] namespaces = new String[namespaceCount];
+		for (int i = 0; i < namespaceCount; i++) {
+			namespaces[i] = string(buffer.getInt(HEADER_SIZE + i * 4));
+		}
+		this.namespaces = Collections.unmodifiableList(Arrays.asList(namespaces));
+	}
+
+	String string(int id) {
+		if (id == NULL) return null;
+
+		String out = stringCache[id];
+		if (out == null) {
+			int start = buffer.getInt(stringOffsets + id * 4);
+			int length = buffer.getInt(stringOffsets + id * 4 + 4) - start;
+			start += stringData;
+
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				byte b = buffer.get(start + i);
+
+				if (b < 0) {//Not plain ASCII, let the charset deal with it
+					ByteBuffer slice = buffer.duplicate();
+					slice.position(start);
+					slice.limit(start + length);
+					chars = null;
+					out = StandardCharsets.UTF_8.decode(slice).toString();
+					break;
+				}
+
+				chars[i] = (char) b;
+			}
+			if (chars != null) out = new String(chars);
+
+			stringCache[id] = out; //Strings are safe to race on
+		}
+
+		return out;
+	}
+
+	private int namespace(String namespace) {
+		return namespaces.indexOf(namespace);
+	}
+
+	@Override
+	public List<String> getNamespaces() {
+		return namespaces;
+	}
+
+	int className(int namespace, int index) {
+		return buffer.getInt(classColumns + (namespace * classes + index) * 4);
+	}
+
+	private int memberPart(int columns, int count, int namespace, int part, int index) {
+		return buffer.getInt(columns + ((namespace * 3 + part) * count + index) * 4);
+	}
+
+	EntryTriple method(int namespace, int index) {
+		int name = memberPart(methodColumns, methods, namespace, 1, index);
+		if (name == NULL) return null;
+
+		return new EntryTriple(string(memberPart(methodColumns, methods, namespace, 0, index)), string(name), string(memberPart(methodColumns, methods, namespace, 2, index)));
+	}
+
+	EntryTriple field(int namespace, int index) {
+		int name = memberPart(fieldColumns, fields, namespace, 1, index);
+		if (name == NULL) return null;
+
+		return new EntryTriple(string(memberPart(fieldColumns, fields, namespace, 0, index)), string(name), string(memberPart(fieldColumns, fields, namespace, 2, index)));
+	}
+
+	private final class BinaryClass implements ClassEntry {
+		final int index;
+
+		BinaryClass(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public String get(String namespace) {
+			int column = namespace(namespace);
+			return column >= 0 ? string(className(column, index)) : null;
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof BinaryClass && ((BinaryClass) obj).index == index && ((BinaryClass) obj).owner() == BinaryMappings.this;
+		}
+
+		private BinaryMappings owner() {
+			return BinaryMappings.this;
+		}
+	}
+
+	private final class BinaryMethod implements MethodEntry {
+		final int index;
+
+		BinaryMethod(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public EntryTriple get(String namespace) {
+			int column = namespace(namespace);
+			return column >= 0 ? method(column, index) : null;
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof BinaryMethod && ((BinaryMethod) obj).index == index && ((BinaryMethod) obj).owner() == BinaryMappings.this;
+		}
+
+		private BinaryMappings owner() {
+			return BinaryMappings.this;
+		}
+	}
+
+	private final class BinaryField implements FieldEntry {
+		final int index;
+
+		BinaryField(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public EntryTriple get(String namespace) {
+			int column = namespace(namespace);
+			return column >= 0 ? field(column, index) : null;
+		}
+
+		@Override
+		public int hashCode() {
+			return index;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof BinaryField && ((BinaryField) obj).index == index && ((BinaryField) obj).owner() == BinaryMappings.this;
+		}
+
+		private BinaryMappings owner() {
+			return BinaryMappings.this;
+		}
+	}
+
+	@Override
+	public Collection<ClassEntry> getClassEntries() {
+		return new AbstractList<ClassEntry>() {
+			@Override
+			public ClassEntry get(int index) {
+				if (index < 0 || index >= classes) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + classes);
+				return new BinaryClass(index);
+			}
+
+			@Override
+			public int size() {
+				return classes;
+			}
+		};
+	}
+
+	@Override
+	public Collection<MethodEntry> getMethodEntries() {
+		return new AbstractList<MethodEntry>() {
+			@Override
+			public MethodEntry get(int index) {
+				if (index < 0 || index >= methods) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + methods);
+				return new BinaryMethod(index);
+			}
+
+			@Override
+			public int size() {
+				return methods;
+			}
+		};
+	}
+
+	@Override
+	public Collection<FieldEntry> getFieldEntries() {
+		return new AbstractList<FieldEntry>() {
+			@Override
+			public FieldEntry get(int index) {
+				if (index < 0 || index >= fields) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + fields);
+				return new BinaryField(index);
+			}
+
+			@Override
+			public int size() {
+				return fields;
+			}
+		};
+	}
+
+	public static void write(Mappings mappings, Path source, Path store) throws IOException {
+		List<String> namespaces = new ArrayList<>(mappings.getNamespaces());
+		int namespaceCount = namespaces.size();
+
+		List<ClassEntry> classes = new ArrayList<>(mappings.getClassEntries());
+		List<MethodEntry> methods = new ArrayList<>(mappings.getMethodEntries());
+		List<FieldEntry> fields = new ArrayList<>(mappings.getFieldEntries());
+
+		Map<String, Integer> pool = new HashMap<>();
+		namespaces.forEach(namespace -> pool(pool, namespace));
+		for (ClassEntry entry : classes) {
+			for (String namespace : namespaces) {
+				String name = entry.get(namespace);
+				if (name != null) pool(pool, name);
+			}
+		}
+		for (MethodEntry entry : methods) {
+			for (String namespace : namespaces) {
+				EntryTriple triple = entry.get(namespace);
+				if (triple != null) pool(pool, triple);
+			}
+		}
+		for (FieldEntry entry : fields) {
+			for (String namespace : namespaces) {
+				EntryTriple triple = entry.get(namespace);
+				if (triple != null) pool(pool, triple);
+			}
+		}
+
+		String[] strings = new String[pool.size()];
+		for (Map.Entry<String, Integer> entry : pool.entrySet()) {
+			strings[entry.getValue()] = entry.getKey();
+		}
+
+		int[][] classColumns = new int[namespaceCount][classes.size()];
+		for (int i = 0; i < classes.size(); i++) {
+			ClassEntry entry = classes.get(i);
+
+			for (int namespace = 0; namespace < namespaceCount; namespace++) {
+				String name = entry.get(namespaces.get(namespace));
+				classColumns[namespace][i] = name != null ? pool.get(name) : NULL;
+			}
+		}
+
+		int[][][] methodColumns = new int[namespaceCount][3][methods.size()];
+		for (int i = 0; i < methods.size(); i++) {
+			MethodEntry entry = methods.get(i);
+
+			for (int namespace = 0; namespace < namespaceCount; namespace++) {
+				fill(pool, entry.get(namespaces.get(namespace)), methodColumns[namespace], i);
+			}
+		}
+
+		int[][][] fieldColumns = new int[namespaceCount][3][fields.size()];
+		for (int i = 0; i < fields.size(); i++) {
+			FieldEntry entry = fields.get(i);
+
+			for (int namespace = 0; namespace < namespaceCount; namespace++) {
+				fill(pool, entry.get(namespaces.get(namespace)), fieldColumns[namespace], i);
+			}
+		}
+
+		Path temp = Files.createTempFile(store.getParent(), store.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(Files.size(source));
+				out.writeLong(Files.getLastModifiedTime(source).toMillis());
+				out.write(hash(source));
+				out.writeInt(namespaceCount);
+				out.writeInt(strings.length);
+				out.writeInt(classes.size());
+				out.writeInt(methods.size());
+				out.writeInt(fields.size());
+				for (String namespace : namespaces) {
+					out.writeInt(pool.get(namespace));
+				}
+
+				byte[][] encoded = new byte[strings.length][];
+				int offset = 0;
+				for (int i = 0; i < strings.length; i++) {
+					out.writeInt(offset);
+					offset += (encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8)).length;
+				}
+				out.writeInt(offset);
+
+				for (int[] column : classColumns) {
+					writeAll(out, column);
+				}
+				for (int[][] columns : methodColumns) {
+					for (int[] column : columns) {
+						writeAll(out, column);
+					}
+				}
+				for (int[][] columns : fieldColumns) {
+					for (int[] column : columns) {
+						writeAll(out, column);
+					}
+				}
+
+				for (byte[] string : encoded) {
+					out.write(string);
+				}
+			}
+
+			Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void pool(Map<String, Integer> pool, String value) {
+		pool.putIfAbsent(value, pool.size());
+	}
+
+	private static void pool(Map<String, Integer> pool, EntryTriple triple) {
+		pool(pool, triple.getOwner());
+		pool(pool, triple.getName());
+		pool(pool, triple.getDesc());
+	}
+
+	private static void fill(Map<String, Integer> pool, EntryTriple triple, int[][] columns, int index) {
+		if (triple != null) {
+			columns[0][index] = pool.get(triple.getOwner());
+			columns[1][index] = pool.get(triple.getName());
+			columns[2][index] = pool.get(triple.getDesc());
+		} else {
+			columns[0][index] = columns[1][index] = columns[2][index] = NULL;
+		}
+	}
+
+	private static void writeAll(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+}
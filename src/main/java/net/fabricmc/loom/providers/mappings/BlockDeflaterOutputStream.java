@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import net.fabricmc.loom.util.OrderedTasks;
+
+/**
+ * A raw deflate stream which compresses fixed size blocks independently on the common pool, in the same manner as pigz.
+ *
+ * <p>Each block is primed with the end of the one before it as a dictionary and ends on a byte aligned sync flush, so the
+ * blocks can simply be written one after another to form a single valid deflate stream.
+ */
+public class BlockDeflaterOutputStream extends OutputStream {
+	private static final int BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+	private static final byte[] GZIP_HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+
+	protected final OutputStream out;
+	private final OrderedTasks<byte[]> pending = new OrderedTasks<>(this::writeBlock);
+	private final CRC32 crc = new CRC32();
+	private byte[] block = new byte[BLOCK_SIZE], previous;
+	private int used;
+	private long size, compressedSize;
+	private boolean finished;
+
+	/** Wrap the given stream in a parallel compressing gzip stream */
+	public static OutputStream gzip(OutputStream out) throws IOException {
+		out.write(GZIP_HEADER);
+
+		return new BlockDeflaterOutputStream(out) {
+			@Override
+			protected void writeTrailer() throws IOException {
+				out.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt((int) getCRC()).putInt((int) getSize()).array());
+			}
+		};
+	}
+
+	public BlockDeflaterOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (finished) throw new IOException("Stream already finished");
+
+		block[used++] = (byte) b;
+		if (used == BLOCK_SIZE) submit(false);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) throw new IOException("Stream already finished");
+
+		while (len > 0) {
+			int chunk = Math.min(len, BLOCK_SIZE - used);
+			System.arraycopy(b, off, block, used, chunk);
+			used += chunk;
+			off += chunk;
+			len -= chunk;
+
+			if (used == BLOCK_SIZE) submit(false);
+		}
+	}
+
+	private void submit(boolean last) throws IOException {
+		byte[] input = block, dictionary = previous;
+		int length = used;
+
+		crc.update(input, 0, length);
+		size += length;
+
+		if (!last) {//Only full blocks are followed by another, so the dictionary can just be the end of this one
+			previous = input;
+			block = new byte[BLOCK_SIZE];
+			used = 0;
+		}
+
+		pending.submit(() -> deflate(input, length, dictionary, last));
+	}
+
+	private static byte[] deflate(byte[] input, int length, byte[] dictionary, boolean last) {
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+
+		if (dictionary != null) deflater.setDictionary(dictionary, BLOCK_SIZE - DICTIONARY_SIZE, DICTIONARY_SIZE);
+		deflater.setInput(input, 0, length);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+		byte[] buffer = new byte[16384];
+
+		if (last) {
+			deflater.finish();
+
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+		} else {
+			int written;
+			do {//A full buffer might mean there's more to come, so go until it isn't
+				written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+				out.write(buffer, 0, written);
+			} while (written == buffer.length);
+		}
+
+		return out.toByteArray();
+	}
+
+	private void writeBlock(byte[] compressed) throws IOException {
+		out.write(compressed);
+		compressedSize += compressed.length;
+	}
+
+	/** Compress whatever is left and end the deflate stream, without closing the underlying stream */
+	public void finish() throws IOException {
+		if (!finished) {
+			submit(true);
+			finished = true;
+
+			pending.finish();
+			writeTrailer();
+		}
+	}
+
+	/** Write anything which comes after the deflate stream once it is finished */
+	protected void writeTrailer() throws IOException {
+	}
+
+	/** The CRC-32 of everything written so far */
+	public long getCRC() {
+		return crc.getValue();
+	}
+
+	/** The number of uncompressed bytes written so far */
+	public long getSize() {
+		return size;
+	}
+
+	/** The number of compressed bytes written to the underlying stream so far */
+	public long getCompressedSize() {
+		return compressedSize;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		//Flushing a partial block would split the stream at the wrong place, so only whatever has already been compressed goes
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Remaps the classes in descriptors with a given class remapper, remembering a bounded number of the descriptors it has already seen.
+ *
+ * <p>Each instance is only meant for the thread which made it, so the memo is a plain map rather than a concurrent cache.
+ */
+public final class DescriptorRemapper implements UnaryOperator<String> {
+	private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+	private static final int MEMO_SIZE = 16384;
+	private final UnaryOperator<String> classRemapper;
+	private final Map<String, String> memo = new HashMap<>();
+
+	public DescriptorRemapper(UnaryOperator<String> classRemapper) {
+		this.classRemapper = classRemapper;
+	}
+
+	@Override
+	public String apply(String desc) {
+		String out = memo.get(desc);
+
+		if (out == null) {
+			if (memo.size() >= MEMO_SIZE) memo.clear(); //Cheaper than tracking which were least recently used
+			memo.put(desc, out = remap(desc, classRemapper));
+		}
+
+		return out;
+	}
+
+	/** Remap every class in the given descriptor, giving back the same instance if none of them change */
+	public static String remap(String desc, UnaryOperator<String> classRemapper) {
+		int start = desc.indexOf('L');
+		if (start < 0) return desc; //Only primitives, nothing to remap
+
+		StringBuilder out = BUILDER.get();
+		out.setLength(0);
+		out.append(desc, 0, start);
+
+		boolean changed = false;
+		for (int i = start, end = desc.length(); i < end; i++) {
+			char c = desc.charAt(i);
+			out.append(c);
+
+			if (c == 'L') {
+				int split = desc.indexOf(';', i + 1);
+				if (split < 0) {//Not a real descriptor, leave the rest as it is
+					out.append(desc, i + 1, end);
+					break;
+				}
+
+				String name = desc.substring(i + 1, split);
+				String mapped = classRemapper.apply(name);
+				if (!name.equals(mapped)) changed = true;
+
+				out.append(mapped).append(';');
+				i = split;
+			}
+		}
+
+		return changed ? out.toString() : desc;
+	}
+}
@@ -24,170 +24,229 @@
 package net.fabricmc.loom.providers.mappings;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class EnigmaReader {
 	public static void readEnigma(Path dir, IMappingAcceptor mappingAcceptor) throws IOException {
-		try (Stream<Path> stream = Files.find(FileSystems.newFileSystem(dir, null).getPath("/"),
-				Integer.MAX_VALUE,
-				(path, attr) -> attr.isRegularFile() && path.getFileName().toString().endsWith(".mapping"),
-				FileVisitOption.FOLLOW_LINKS)) {
+		try (FileSystem fs = FileSystems.newFileSystem(dir, null); Stream<Path> stream = findMappings(fs)) {
 			stream.forEach(file -> readEnigmaFile(file, mappingAcceptor));
 		} catch (UncheckedIOException e) {
 			throw e.getCause();
 		}
 	}
 
+	/**
+	 * Read the Enigma mappings from the given zip, parsing the files concurrently into shards which are merged in file order once all are done.
+	 * This gives the same result as {@link #readEnigma(Path, IMappingAcceptor)}, but is much faster for zips of many small files.
+	 */
+	public static void readEnigmaParallel(Path dir, MappingBlob mappings) throws IOException {
+		try (FileSystem fs = FileSystems.newFileSystem(dir, null)) {
+			List<Path> files;
+			try (Stream<Path> stream = findMappings(fs)) {
+				files = stream.collect(Collectors.toList());
+			}
+
+			int shards = Math.min(files.size(), ForkJoinPool.getCommonPoolParallelism());
+			if (shards <= 1) {
+				files.forEach(file -> readEnigmaFile(file, mappings));
+				return;
+			}
+
+			List<ForkJoinTask<MappingBlob>> tasks = new ArrayList<>(shards);
+			for (int shard = 0; shard < shards; shard++) {
+				List<Path> slice = files.subList(files.size() * shard / shards, files.size() * (shard + 1) / shards);
+
+				tasks.add(ForkJoinPool.commonPool().submit(() -> {
+					MappingBlob blob = new MappingBlob();
+
+					for (Path file : slice) {
+						//Pull the whole entry out in one go rather than contending over the zip whilst parsing
+						byte[] contents = Files.readAllBytes(file);
+
+						try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents), StandardCharsets.UTF_8))) {
+							readEnigmaFile(reader, blob);
+						}
+					}
+
+					return blob;
+				}));
+			}
+
+			for (ForkJoinTask<MappingBlob> task : tasks) {
+				mappings.merge(task.join());
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static Stream<Path> findMappings(FileSystem fs) throws IOException {
+		return Files.find(fs.getPath("/"), Integer.MAX_VALUE, (path, attr) -> attr.isRegularFile() && path.getFileName().toString().endsWith(".mapping"), FileVisitOption.FOLLOW_LINKS);
+	}
+
 	private static void readEnigmaFile(Path file, IMappingAcceptor mappingAcceptor) {
 		try (BufferedReader reader = Files.newBufferedReader(file)) {
-			String line;
-			Queue<String> contextStack = Collections.asLifoQueue(new ArrayDeque<>());
-			Queue<String> contextNamedStack = Collections.asLifoQueue(new ArrayDeque<>());
-			int indent = 0;
-
-			while ((line = reader.readLine()) != null) {
-				if (line.isEmpty()) continue;
-
-				int newIndent = 0;
-				while (newIndent < line.length() && line.charAt(newIndent) == '\t') newIndent++;
-				int indentChange = newIndent - indent;
-
-				if (indentChange != 0) {
-					if (indentChange < 0) {
-						for (int i = 0; i < -indentChange; i++) {
-							contextStack.remove();
-							contextNamedStack.remove();
-						}
+			readEnigmaFile(reader, mappingAcceptor);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
-						indent = newIndent;
-					} else {
-						throw new IOException("invalid enigma line (invalid indentation change): "+line);
+	private static void readEnigmaFile(BufferedReader reader, IMappingAcceptor mappingAcceptor) throws IOException {
+		String line;
+		Queue<String> contextStack = Collections.asLifoQueue(new ArrayDeque<>());
+		Queue<String> contextNamedStack = Collections.asLifoQueue(new ArrayDeque<>());
+		int indent = 0;
+
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) continue;
+
+			int newIndent = 0;
+			while (newIndent < line.length() && line.charAt(newIndent) == '\t') newIndent++;
+			int indentChange = newIndent - indent;
+
+			if (indentChange != 0) {
+				if (indentChange < 0) {
+					for (int i = 0; i < -indentChange; i++) {
+						contextStack.remove();
+						contextNamedStack.remove();
 					}
+
+					indent = newIndent;
+				} else {
+					throw new IOException("invalid enigma line (invalid indentation change): "+line);
 				}
+			}
 
-				line = line.substring(indent);
-				String[] parts = line.split(" ");
-
-				switch (parts[0]) {
-				case "CLASS":
-					if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					String obfName = parts[1];
-					if (indent >= 1) {//Inner classes have certain inconsistencies...
-						if (obfName.indexOf('/') > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
-							int split = obfName.lastIndexOf('$');
-							assert split > 2; //Should be at least a/b$c
-							String context = contextStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							obfName = context.substring(1) + '$' + obfName.substring(split + 1);
-						} else if (obfName.indexOf('$') < 1) {//Some inner classes don't carry any outer name at all
-							assert obfName.indexOf('$') == -1 && obfName.indexOf('/') == -1;
-							String context = contextStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							obfName = context.substring(1) + '$' + obfName;
-						}
-					}
-					contextStack.add('C' + obfName);
-					indent++;
-					if (parts.length == 3) {
-						String className;
-						if (indent > 1) {//If we're an indent in, we're an inner class so want the outer classes's name
-							String context = contextNamedStack.peek();
-							if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
-							//Named inner classes shouldn't ever carry the outer class's package + name
-							assert !parts[2].startsWith(context.substring(1)): "Pre-prefixed enigma class name: " + parts[2];
-							className = context.substring(1) + '$' + parts[2];
-						} else {
-							className = parts[2];
-						}
-						contextNamedStack.add('C' + className);
-						mappingAcceptor.acceptClass(obfName, className);
-					} else {
-						contextNamedStack.add('C' + obfName); //No name, but we still need something to avoid underflowing
+			line = line.substring(indent);
+			String[] parts = line.split(" ");
+
+			switch (parts[0]) {
+			case "CLASS":
+				if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				String obfName = parts[1];
+				if (indent >= 1) {//Inner classes have certain inconsistencies...
+					if (obfName.indexOf('/') > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
+						int split = obfName.lastIndexOf('$');
+						assert split > 2; //Should be at least a/b$c
+						String context = contextStack.peek();
+						if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						obfName = context.substring(1) + '$' + obfName.substring(split + 1);
+					} else if (obfName.indexOf('$') < 1) {//Some inner classes don't carry any outer name at all
+						assert obfName.indexOf('$') == -1 && obfName.indexOf('/') == -1;
+						String context = contextStack.peek();
+						if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						obfName = context.substring(1) + '$' + obfName;
 					}
-					break;
-				case "METHOD": {
-					if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					if (!parts[parts.length - 1].startsWith("(")) throw new IOException("invalid enigma line (invalid method desc): "+line);
-					String context = contextStack.peek();
-					if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (method without class): "+line);
-					contextStack.add("M"+parts[1]+parts[parts.length - 1]);
-					indent++;
-					if (parts.length == 4) {
-						mappingAcceptor.acceptMethod(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
-						contextNamedStack.add('M' + parts[2]);
+				}
+				contextStack.add('C' + obfName);
+				indent++;
+				if (parts.length == 3) {
+					String className;
+					if (indent > 1) {//If we're an indent in, we're an inner class so want the outer classes's name
+						String context = contextNamedStack.peek();
+						if (context == null || context.charAt(0) != 'C') throw new IOException("Invalid enigma line (named inner class without outer class name): " + line);
+						//Named inner classes shouldn't ever carry the outer class's package + name
+						assert !parts[2].startsWith(context.substring(1)): "Pre-prefixed enigma class name: " + parts[2];
+						className = context.substring(1) + '$' + parts[2];
 					} else {
-						contextNamedStack.add('M' + parts[1]); //No name, but we still need something to avoid underflowing
+						className = parts[2];
 					}
-					break;
+					contextNamedStack.add('C' + className);
+					mappingAcceptor.acceptClass(obfName, className);
+				} else {
+					contextNamedStack.add('C' + obfName); //No name, but we still need something to avoid underflowing
 				}
-				case "ARG":
-				case "VAR": {
-					if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					String methodContext = contextStack.poll();
-					if (methodContext == null || methodContext.charAt(0) != 'M') throw new IOException("invalid enigma line (arg without method): "+line);
-					String classContext = contextStack.peek();
-					if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException();
-					contextStack.add(methodContext);
-
-					int index = Integer.parseInt(parts[1]);
-					boolean isArg = parts[0].equals("ARG");
-
-					if (parts.length == 3) {
-						int methodDescStart = methodContext.indexOf('(');
-						assert methodDescStart != -1;
-
-						String srcClsName = classContext.substring(1);
-						String srcMethodName = methodContext.substring(1, methodDescStart);
-						String srcMethodDesc = methodContext.substring(methodDescStart);
-						String name = parts[2];
-
-						if (isArg) {
-							mappingAcceptor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, index, name);
-						} else {
-							throw new UnsupportedOperationException("Method var " + index + " in " + srcClsName + '#' + methodContext.substring(1));
-						}
+				break;
+			case "METHOD": {
+				if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				if (!parts[parts.length - 1].startsWith("(")) throw new IOException("invalid enigma line (invalid method desc): "+line);
+				String context = contextStack.peek();
+				if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (method without class): "+line);
+				contextStack.add("M"+parts[1]+parts[parts.length - 1]);
+				indent++;
+				if (parts.length == 4) {
+					mappingAcceptor.acceptMethod(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
+					contextNamedStack.add('M' + parts[2]);
+				} else {
+					contextNamedStack.add('M' + parts[1]); //No name, but we still need something to avoid underflowing
+				}
+				break;
+			}
+			case "ARG":
+			case "VAR": {
+				if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				String methodContext = contextStack.poll();
+				if (methodContext == null || methodContext.charAt(0) != 'M') throw new IOException("invalid enigma line (arg without method): "+line);
+				String classContext = contextStack.peek();
+				if (classContext == null || classContext.charAt(0) != 'C') throw new IllegalStateException();
+				contextStack.add(methodContext);
+
+				int index = Integer.parseInt(parts[1]);
+				boolean isArg = parts[0].equals("ARG");
+
+				if (parts.length == 3) {
+					int methodDescStart = methodContext.indexOf('(');
+					assert methodDescStart != -1;
+
+					String srcClsName = classContext.substring(1);
+					String srcMethodName = methodContext.substring(1, methodDescStart);
+					String srcMethodDesc = methodContext.substring(methodDescStart);
+					String name = parts[2];
 
-						contextNamedStack.add((isArg ? 'A' : 'V') + name);
+					if (isArg) {
+						mappingAcceptor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, index, name);
 					} else {
-						contextNamedStack.add(isArg ? "A" : "V");
+						throw new UnsupportedOperationException("Method var " + index + " in " + srcClsName + '#' + methodContext.substring(1));
 					}
 
-					indent++;
-					contextStack.add((isArg ? "A" : "V") + index);
-					break;
+					contextNamedStack.add((isArg ? 'A' : 'V') + name);
+				} else {
+					contextNamedStack.add(isArg ? "A" : "V");
 				}
-				case "FIELD":
-					if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					String context = contextStack.peek();
-					if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (field without class): "+line);
-					assert parts[1].indexOf('#') < 0;
-					assert parts[parts.length - 1].indexOf('#') < 0;
-					contextStack.add('F' + parts[1] + '#' + parts[parts.length - 1]);
-					indent++;
-					if (parts.length == 4) {
-						mappingAcceptor.acceptField(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
-						contextNamedStack.add('F' + parts[2]);
-					} else {
-						contextNamedStack.add('F' + parts[1]); //No name, but we still need something to avoid underflowing
-					}
-					break;
-				case "COMMENT":
-					break;
-				default:
-					throw new IOException("invalid enigma line (unknown type): "+line);
+
+				indent++;
+				contextStack.add((isArg ? "A" : "V") + index);
+				break;
+			}
+			case "FIELD":
+				if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+				String context = contextStack.peek();
+				if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (field without class): "+line);
+				assert parts[1].indexOf('#') < 0;
+				assert parts[parts.length - 1].indexOf('#') < 0;
+				contextStack.add('F' + parts[1] + '#' + parts[parts.length - 1]);
+				indent++;
+				if (parts.length == 4) {
+					mappingAcceptor.acceptField(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
+					contextNamedStack.add('F' + parts[2]);
+				} else {
+					contextNamedStack.add('F' + parts[1]); //No name, but we still need something to avoid underflowing
 				}
+				break;
+			case "COMMENT":
+				break;
+			default:
+				throw new IOException("invalid enigma line (unknown type): "+line);
 			}
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
 		}
 	}
 }
\ No newline at end of file
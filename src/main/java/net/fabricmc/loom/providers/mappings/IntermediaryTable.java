@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A map which takes advantage of Intermediary names being numbered ({@code class_N}, {@code method_N} or {@code field_N}) to keep
+ * such keys in a dense array indexed by their number, rather than having to hash them. Keys which don't fit the pattern, or which
+ * collide with another key on the same number (such as methods overriding one another), are hashed as normal.
+ */
+final class IntermediaryTable<K, V> {
+	/** The largest number that will be kept densely, anything beyond is more likely a mistake than a real Intermediary */
+	private static final int MAX_DENSE = 1 << 22;
+	private final String prefix;
+	private final Function<K, String> naming;
+	private Object[] keys = new Object[0], values = new Object[0];
+	private final Map<K, V> fallback = new HashMap<>();
+	private int size;
+
+	/**
+	 * Get the number from the given Intermediary style name, checking only the last segment so inner classes work
+	 *
+	 * @return The number after the prefix, or {@code -1} if the name doesn't follow the pattern
+	 */
+	static int number(String name, String prefix) {
+		int start = Math.max(name.lastIndexOf('/'), name.lastIndexOf('$')) + 1;
+		if (!name.startsWith(prefix, start)) return -1;
+
+		start += prefix.length();
+		int end = name.length();
+		if (start == end || end - start > 9) return -1;
+
+		int number = 0;
+		for (int i = start; i < end; i++) {
+			char c = name.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			number = number * 10 + c - '0';
+		}
+
+		return number < MAX_DENSE ? number : -1;
+	}
+
+	/**
+	 * @param prefix The prefix each name is expected to have before the number
+	 * @param naming How to get the name from each key
+	 */
+	public IntermediaryTable(String prefix, Function<K, String> naming) {
+		this.prefix = prefix;
+		this.naming = naming;
+	}
+
+	/** Whether the given key would be kept densely (providing it doesn't collide with another) */
+	public boolean covers(K key) {
+		return number(naming.apply(key), prefix) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		int number = number(naming.apply(key), prefix);
+
+		if (number >= 0 && number < keys.length && key.equals(keys[number])) {
+			return (V) values[number];
+		} else {
+			return fallback.get(key);
+		}
+	}
+
+	public void put(K key, V value) {
+		Objects.requireNonNull(key, "Null keys are not supported");
+		Objects.requireNonNull(value, "Null values are not supported");
+		int number = number(naming.apply(key), prefix);
+
+		if (number >= 0) {
+			if (number >= keys.length) {
+				int length = Math.min(Math.max(number + 1, keys.length + (keys.length >> 1)), MAX_DENSE);
+				keys = Arrays.copyOf(keys, length);
+				values = Arrays.copyOf(values, length);
+			}
+
+			if (keys[number] == null) {
+				keys[number] = key;
+				values[number] = value;
+				size++;
+				return;
+			} else if (key.equals(keys[number])) {
+				values[number] = value;
+				return;
+			}
+		}
+
+		if (fallback.put(key, value) == null) size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				Iterator<K> dense = new Iterator<K>() {
+					private final Object[] keys = IntermediaryTable.this.keys;
+					private int next = advance(0);
+
+					private int advance(int from) {
+						for (int i = from; i < keys.length; i++) {
+							if (keys[i] != null) return i;
+						}
+
+						return -1;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next >= 0;
+					}
+
+					@Override
+					@SuppressWarnings("unchecked")
+					public K next() {
+						if (next < 0) throw new NoSuchElementException();
+
+						K key = (K) keys[next];
+						next = advance(next + 1);
+						return key;
+					}
+				};
+
+				return Iterators.unmodifiableIterator(Iterators.concat(dense, fallback.keySet().iterator()));
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public boolean contains(Object key) {
+				try {
+					return key != null && get((K) key) != null;
+				} catch (ClassCastException e) {
+					return false;
+				}
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
@@ -7,18 +7,19 @@
  */
 package net.fabricmc.loom.providers.mappings;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.ObjIntConsumer;
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import com.google.common.collect.Iterables;
@@ -33,10 +34,8 @@ import net.fabricmc.mappings.EntryTriple;
 public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 	public static class Mapping {
 		public static class Method extends Field {
-			static class Arg {
-				String name, comment;
-			}
-			private Arg[] args = new Arg[0];
+			private static final String[] NO_ARGS = new String[0];
+			private String[] argNames = NO_ARGS, argComments = NO_ARGS;
 
 			public Method(String fromName, String fromDesc) {
 				super(fromName, fromDesc);
@@ -47,22 +46,21 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 				}
 			}
 
-			private Arg extendTo(int index) {
-				if (args.length <= index) {
-					Arg[] longerArgs = new Arg[index + 1];
-					System.arraycopy(args, 0, longerArgs, 0, args.length);
-					args = longerArgs;
+			private void extendTo(int index) {
+				if (argNames.length <= index) {
+					argNames = Arrays.copyOf(argNames, index + 1);
+					argComments = Arrays.copyOf(argComments, index + 1);
 				}
-
-				return args[index] == null ? args[index] = new Arg() : args[index];
 			}
 
 			void addArg(int index, String name) {
-				extendTo(index).name = name;
+				extendTo(index);
+				argNames[index] = name;
 			}
 
 			void addArgComment(int index, String comment) {
-				extendTo(index).comment = comment;
+				extendTo(index);
+				argComments[index] = comment;
 			}
 
 			public boolean hasAnyComments() {
@@ -70,89 +68,45 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 			}
 
 			public boolean hasArgs() {
-				return args.length > 0;
+				return argNames.length > 0;
 			}
 
 			public boolean hasArgNames() {
-				return Arrays.stream(args).filter(Objects::nonNull).anyMatch(arg -> arg.name != null);
+				return Arrays.stream(argNames).anyMatch(Objects::nonNull);
 			}
 
 			public boolean hasArgComments() {
-				return Arrays.stream(args).filter(Objects::nonNull).anyMatch(arg -> arg.comment != null);
-			}
-
-			Arg[] cloneArgs() {
-				return Arrays.stream(args).map(arg -> {
-					if (arg == null) return null;
-					Arg clone = new Arg();
-
-					clone.name = arg.name;
-					clone.comment = arg.comment;
-
-					return clone;
-				}).toArray(Arg[]::new);
+				return Arrays.stream(argComments).anyMatch(Objects::nonNull);
 			}
 
 			void cloneArgs(Method method) {
-				if (method.args.length > args.length) args = new Arg[method.args.length];
+				if (method.argNames.length > argNames.length) extendTo(method.argNames.length - 1);
 
-				for (int i = 0; i < method.args.length; i++) {
-					Arg arg = method.args[i];
-					if (arg == null) continue;
+				for (int i = 0; i < method.argNames.length; i++) {
+					if (method.argNames[i] == null && method.argComments[i] == null) continue;
 
-					Arg clone = args[i] == null ? args[i] = new Arg() : args[i];
-					clone.name = arg.name;
-					clone.comment = arg.comment;
+					argNames[i] = method.argNames[i];
+					argComments[i] = method.argComments[i];
 				}
 			}
 
-			Arg[] extendArgs(Method that) {
-				Arg[] args = new Arg[Math.max(this.args.length, that.args.length)];
-
-				Arg[] shorter = args.length == this.args.length ? that.args : this.args;
-				assert shorter.length == Math.min(this.args.length, that.args.length);
-				Arg[] longer = shorter == this.args ? that.args : this.args;
-				assert longer.length == args.length;
-
-				for (int i = 0; i < shorter.length; i++) {
-					Arg existing = this.args[i];
-					Arg other = that.args[i];
-					if (existing == null && other == null) continue; //Neither have a suggestion
-
-					Arg clone = args[i] = new Arg();
-					clone.name = existing != null && existing.name != null ? existing.name : other != null ? other.name : null;
-					clone.comment = existing != null && existing.comment != null ? existing.comment : other != null ? other.comment : null;
-				}
-
-				for (int i = shorter.length; i < longer.length; i++) {
-					Arg only = longer[i];
-					if (only == null) continue;
-
-					Arg clone = args[i] = new Arg();
-					clone.name = only.name;
-					clone.comment = only.comment;
-				}
-
-				return args;
-			}
-
 			public String arg(int index) {
-				return args.length > index && args[index] != null ? args[index].name : null;
+				return argNames.length > index ? argNames[index] : null;
 			}
 
 			public Optional<String> argComment(int index) {
-				return args.length > index ? Optional.ofNullable(args[index]).map(arg -> arg.comment) : Optional.empty();
+				return argComments.length > index ? Optional.ofNullable(argComments[index]) : Optional.empty();
 			}
 
 			public <T extends Throwable> void iterateArgs(ThrowingIntObjConsumer<String, T> argConsumer) throws T {
-				for (int i = args.length - 1; i >= 0; i--) {
-					if (args[i] != null && args[i].name != null) argConsumer.accept(i, args[i].name);
+				for (int i = argNames.length - 1; i >= 0; i--) {
+					if (argNames[i] != null) argConsumer.accept(i, argNames[i]);
 				}
 			}
 
 			public void iterateArgComments(ObjIntConsumer<String> argCommentConsumer) {
-				for (int i = 0; i < args.length; i++) {
-					if (args[i] != null && args[i].comment != null) argCommentConsumer.accept(args[i].comment, i);
+				for (int i = 0; i < argComments.length; i++) {
+					if (argComments[i] != null) argCommentConsumer.accept(argComments[i], i);
 				}
 			}
 		}
@@ -187,6 +141,10 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 				return toDesc != null ? toDesc : remapDesc(fromDesc, remapper);
 			}
 
+			public String desc(DescriptorRemapper remapper) {
+				return toDesc != null ? toDesc : remapper.apply(fromDesc);
+			}
+
 			public Optional<String> comment() {
 				return Optional.ofNullable(comment);
 			}
@@ -199,13 +157,29 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		public final String from;
 		String to;
 		String comment;
-		final Map<String, Method> methods = new HashMap<>();
-		final Map<String, Field> fields = new HashMap<>();
+		final SymbolTable symbols;
+		final SymbolMap<Method> methods = new SymbolMap<>();
+		final SymbolMap<Field> fields = new SymbolMap<>();
 
 		public Mapping(String from) {
+			this(new SymbolTable(), from);
+		}
+
+		Mapping(SymbolTable symbols, String from) {
+			this.symbols = symbols;
 			this.from = from;
 		}
 
+		private long findMember(String name, String desc) {
+			int nameID = symbols.find(name);
+			if (nameID < 0) return -1;
+
+			int descID = symbols.find(desc);
+			if (descID < 0) return -1;
+
+			return SymbolMap.key(nameID, descID);
+		}
+
 		public String to() {
 			return to;
 		}
@@ -227,7 +201,8 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		public boolean hasMethod(Method other) {
-			return methods.containsKey(other.fromName + other.fromDesc);
+			long key = findMember(other.fromName, other.fromDesc);
+			return key >= 0 && methods.containsKey(key);
 		}
 
 		public Method method(Method other) {
@@ -240,7 +215,13 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		Method method(String srcName, String srcDesc) {
-			return methods.computeIfAbsent(srcName + srcDesc, k -> new Method(srcName, srcDesc));
+			int nameID = symbols.intern(srcName);
+			int descID = symbols.intern(srcDesc);
+			long key = SymbolMap.key(nameID, descID);
+
+			Method method = methods.get(key);
+			if (method == null) methods.put(key, method = new Method(symbols.get(nameID), symbols.get(descID)));
+			return method;
 		}
 
 		public Iterable<Field> fields() {
@@ -248,7 +229,8 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		public boolean hasField(Field other) {
-			return fields.containsKey(other.fromName + ";;" + other.fromDesc);
+			long key = findMember(other.fromName, other.fromDesc);
+			return key >= 0 && fields.containsKey(key);
 		}
 
 		public Field field(Field other) {
@@ -261,7 +243,13 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		Field field(String srcName, String srcDesc) {
-			return fields.computeIfAbsent(srcName + ";;" + srcDesc, k -> new Field(srcName, srcDesc));
+			int nameID = symbols.intern(srcName);
+			int descID = symbols.intern(srcDesc);
+			long key = SymbolMap.key(nameID, descID);
+
+			Field field = fields.get(key);
+			if (field == null) fields.put(key, field = new Field(symbols.get(nameID), symbols.get(descID)));
+			return field;
 		}
 
 		public boolean hasComment() {
@@ -287,33 +275,57 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 
 		Stream<Method> methodStream() {
-			return methods.values().stream();
+			return methods.stream();
 		}
 	}
 
-	private final Map<String, Mapping> mappings = new HashMap<>();
+	private final SymbolTable symbols = new SymbolTable();
+	private final SymbolMap<Mapping> mappings = new SymbolMap<>();
+	/** Mappings for Intermediary named classes, which can be found by their number without needing the name to be interned */
+	private final IntermediaryTable<String, Mapping> intermediaries = new IntermediaryTable<>("class_", Function.identity());
+
+	private Mapping find(String srcName) {
+		if (intermediaries.covers(srcName)) return intermediaries.get(srcName);
+
+		int id = symbols.find(srcName);
+		return id >= 0 ? mappings.get(SymbolMap.key(id)) : null;
+	}
 
 	public boolean has(String srcName) {
-		return mappings.containsKey(srcName);
+		return find(srcName) != null;
 	}
 
 	public Mapping get(String srcName) {
-		return mappings.computeIfAbsent(srcName, Mapping::new);
+		boolean intermediary = intermediaries.covers(srcName);
+		if (intermediary) {
+			Mapping mapping = intermediaries.get(srcName);
+			if (mapping != null) return mapping;
+		}
+
+		int id = symbols.intern(srcName);
+		long key = SymbolMap.key(id);
+
+		Mapping mapping = mappings.get(key);
+		if (mapping == null) {
+			mappings.put(key, mapping = new Mapping(symbols, symbols.get(id)));
+			if (intermediary) intermediaries.put(mapping.from, mapping);
+		}
+		return mapping;
 	}
 
 	public Mapping getOrDummy(String srcName) {
-		Mapping mapping = mappings.get(srcName);
+		Mapping mapping = find(srcName);
 		return mapping != null ? mapping : new DummyMapping(srcName);
 	}
 
 	public String tryMapName(String srcName) {
-		Mapping mapping = mappings.get(srcName);
+		Mapping mapping = find(srcName);
 		return mapping != null ? mapping.to : null;
 	}
 
 	@Override
 	public void acceptClass(String srcName, String dstName) {
-		get(srcName).to = dstName;
+		get(srcName).to = symbols.canonical(dstName);
 	}
 
 	@Override
@@ -323,7 +335,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 	@Override
 	public void acceptMethod(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
-		get(srcClsName).method(srcName, srcDesc).setMapping(dstName, dstDesc);
+		get(srcClsName).method(srcName, srcDesc).setMapping(symbols.canonical(dstName), symbols.canonical(dstDesc));
 	}
 
 	@Override
@@ -333,7 +345,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 	@Override
 	public void acceptMethodArg(String srcClsName, String srcMethodName, String srcMethodDesc, int lvIndex, String dstArgName) {
-		get(srcClsName).method(srcMethodName, srcMethodDesc).addArg(lvIndex, dstArgName);
+		get(srcClsName).method(srcMethodName, srcMethodDesc).addArg(lvIndex, symbols.canonical(dstArgName));
 	}
 
 	@Override
@@ -343,7 +355,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 	@Override
 	public void acceptField(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
-		get(srcClsName).field(srcName, srcDesc).setMapping(dstName, dstDesc);
+		get(srcClsName).field(srcName, srcDesc).setMapping(symbols.canonical(dstName), symbols.canonical(dstDesc));
 	}
 
 	@Override
@@ -351,6 +363,28 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		get(className).field(fieldName, desc).comment = comment;
 	}
 
+	/** Copy everything from the given blob into this one, as if each of its mappings had been accepted here after any already present */
+	void merge(MappingBlob blob) {
+		for (Mapping mapping : blob) {
+			Mapping target = get(mapping.from);
+			if (mapping.to != null) target.to = symbols.canonical(mapping.to);
+			if (mapping.comment != null) target.comment = mapping.comment;
+
+			for (Field field : mapping.fields()) {
+				Field targetField = target.field(field.fromName, field.fromDesc);
+				if (field.name() != null) targetField.setMapping(symbols.canonical(field.name()), symbols.canonical(field.desc()));
+				if (field.comment != null) targetField.comment = field.comment;
+			}
+
+			for (Method method : mapping.methods()) {
+				Method targetMethod = target.method(method.fromName, method.fromDesc);
+				if (method.name() != null) targetMethod.setMapping(symbols.canonical(method.name()), symbols.canonical(method.desc()));
+				if (method.comment != null) targetMethod.comment = method.comment;
+				targetMethod.cloneArgs(method);
+			}
+		}
+	}
+
 	@Override
 	public Iterator<Mapping> iterator() {
 		return mappings.values().iterator();
@@ -406,10 +440,10 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		boolean doMethods = aims.contains(InvertionTarget.METHODS);
 		boolean doArgs = aims.contains(InvertionTarget.METHOD_ARGS);
 
-		UnaryOperator<String> classRemapper = name -> {
+		DescriptorRemapper descRemapper = new DescriptorRemapper(name -> {
 			String mapping = tryMapName(name);
 			return mapping != null ? mapping : name;
-		};
+		});
 
 		for (Mapping mapping : mappings.values()) {
 			if (mapping.to == null) {//If there is no mapped class name there is nothing for it to invert to
@@ -426,7 +460,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 					if (field.name() == null) continue;
 					//assert field.desc() != null: mapping.from + '#' + field.fromName + " (" + field.fromDesc + ") changes name without a changed descriptor";
 
-					String desc = field.desc(classRemapper);
+					String desc = field.desc(descRemapper);
 					invertion.acceptField(mapping.to, field.name(), desc, mapping.from, field.fromName, field.fromDesc);
 					invertion.acceptFieldComment(mapping.to, field.name(), desc, field.comment);
 				}
@@ -437,7 +471,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 					if (method.name() == null) continue;
 					//assert method.desc() != null: mapping.from + '#' + method.fromName + method.fromDesc + " changes name without a changed descriptor";
 
-					String desc = method.desc(classRemapper);
+					String desc = method.desc(descRemapper);
 					invertion.acceptMethod(mapping.to, method.name(), desc, mapping.from, method.fromName, method.fromDesc);
 					invertion.acceptMethodComment(mapping.to, method.name(), desc, method.comment);
 					if (doArgs) invertion.get(mapping.to).method(method.name(), desc).cloneArgs(method);
@@ -451,13 +485,13 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 	public MappingBlob rename(MappingBlob blob) {
 		MappingBlob remap = new MappingBlob();
 
-		UnaryOperator<String> classRemapper = name -> {
+		DescriptorRemapper descRemapper = new DescriptorRemapper(name -> {
 			String mapping = blob.tryMapName(name);
 			return mapping != null ? mapping : name;
-		};
+		});
 
 		for (Mapping mapping : mappings.values()) {
-			Mapping bridge = blob.mappings.get(mapping.from);
+			Mapping bridge = blob.find(mapping.from);
 			boolean useBridge = bridge != null;
 
 			String className = useBridge ? bridge.to : mapping.from;
@@ -476,7 +510,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 					}
 				}
 
-				String desc = remapDesc(field.fromDesc, classRemapper);
+				String desc = descRemapper.apply(field.fromDesc);
 				remap.acceptField(className, field.fromName, desc, mapping.to, field.name(), field.desc());
 				remap.acceptFieldComment(className, field.fromName, desc, field.comment);
 			}
@@ -494,7 +528,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 					}
 				}
 
-				String desc = remapDesc(method.fromDesc, classRemapper);
+				String desc = descRemapper.apply(method.fromDesc);
 				remap.acceptMethod(className, method.fromName, desc, mapping.to, method.name(), method.desc());
 				remap.acceptMethodComment(className, method.fromName, desc, method.comment);
 				remap.get(className).method(method.fromName, desc).cloneArgs(method);
@@ -504,16 +538,100 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		return remap;
 	}
 
-	private static final Pattern CLASS_FINDER = Pattern.compile("L([^;]+);");
-	public static String remapDesc(String desc, UnaryOperator<String> classRemapper) {
-		StringBuffer buf = new StringBuffer();
+	private static final int CHECKPOINT_MAGIC = 0x4D424C42; //MBLB
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(CHECKPOINT_MAGIC);
+		out.writeInt(mappings.size());
+
+		for (Mapping mapping : mappings.values()) {
+			writeString(out, mapping.from);
+			writeString(out, mapping.to);
+			writeString(out, mapping.comment);
 
-		Matcher matcher = CLASS_FINDER.matcher(desc);
-		while (matcher.find()) {
-			matcher.appendReplacement(buf, Matcher.quoteReplacement('L' + classRemapper.apply(matcher.group(1)) + ';'));
+			out.writeInt(mapping.fields.size());
+			for (Field field : mapping.fields()) {
+				writeString(out, field.fromName);
+				writeString(out, field.fromDesc);
+				writeString(out, field.name());
+				writeString(out, field.desc());
+				writeString(out, field.comment);
+			}
+
+			out.writeInt(mapping.methods.size());
+			for (Method method : mapping.methods()) {
+				writeString(out, method.fromName);
+				writeString(out, method.fromDesc);
+				writeString(out, method.name());
+				writeString(out, method.desc());
+				writeString(out, method.comment);
+
+				out.writeInt(method.argNames.length);
+				for (int i = 0; i < method.argNames.length; i++) {
+					writeString(out, method.argNames[i]);
+					writeString(out, method.argComments[i]);
+				}
+			}
+		}
+	}
+
+	public static MappingBlob read(DataInput in) throws IOException {
+		if (in.readInt() != CHECKPOINT_MAGIC) throw new IOException("Not a mapping blob");
+		MappingBlob blob = new MappingBlob();
+
+		for (int classes = in.readInt(); classes > 0; classes--) {
+			String className = readString(in);
+			blob.acceptClass(className, readString(in));
+			String comment = readString(in);
+			if (comment != null) blob.acceptClassComment(className, comment);
+
+			for (int fields = in.readInt(); fields > 0; fields--) {
+				String name = readString(in);
+				String desc = readString(in);
+				blob.acceptField(className, name, desc, null, readString(in), readString(in));
+				comment = readString(in);
+				if (comment != null) blob.acceptFieldComment(className, name, desc, comment);
+			}
+
+			for (int methods = in.readInt(); methods > 0; methods--) {
+				String name = readString(in);
+				String desc = readString(in);
+				blob.acceptMethod(className, name, desc, null, readString(in), readString(in));
+				comment = readString(in);
+				if (comment != null) blob.acceptMethodComment(className, name, desc, comment);
+
+				for (int i = 0, args = in.readInt(); i < args; i++) {
+					String arg = readString(in);
+					if (arg != null) blob.acceptMethodArg(className, name, desc, i, arg);
+					comment = readString(in);
+					if (comment != null) blob.acceptMethodArgComment(className, name, desc, i, comment);
+				}
+			}
+		}
+
+		return blob;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {//Avoid writeUTF as comments can quite reasonably be longer than it allows
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
 		}
-		matcher.appendTail(buf);
+	}
 
-		return buf.toString();
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static String remapDesc(String desc, UnaryOperator<String> classRemapper) {
+		return DescriptorRemapper.remap(desc, classRemapper);
 	}
 }
\ No newline at end of file
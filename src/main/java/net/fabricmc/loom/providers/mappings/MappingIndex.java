@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.ExtendedMappings;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MethodEntry;
+import net.fabricmc.mappings.model.CommentEntry;
+import net.fabricmc.mappings.model.CommentEntry.Parameter;
+import net.fabricmc.mappings.model.Comments;
+
+/**
+ * Hashed lookups of the classes, methods and fields in a {@link Mappings} by their name in any namespace.
+ *
+ * <p>Each namespace is only indexed the first time it is asked for, and the index for a given {@link Mappings} is shared
+ * between everything which asks for it via {@link #of(Mappings)}. A shared index only holds the mappings weakly, so it never
+ * keeps them alive by itself: anything holding on to one must also hold on to the mappings it was made for. Mappings which
+ * are only read for a single use can skip the sharing with {@link #standalone(Mappings)} instead.
+ * Intermediary style names are kept by their number in an {@link IntermediaryTable} rather than hashed.
+ */
+public final class MappingIndex {
+	private static final LoadingCache<Mappings, MappingIndex> INDEXES = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(mappings -> new MappingIndex(new WeakReference<>(mappings)::get)));
+
+	private final Supplier<Mappings> mappings;
+	private final Map<String, IntermediaryTable<String, ClassEntry>> classes = new ConcurrentHashMap<>();
+	private final Map<String, IntermediaryTable<EntryTriple, MethodEntry>> methods = new ConcurrentHashMap<>();
+	private final Map<String, IntermediaryTable<EntryTriple, FieldEntry>> fields = new ConcurrentHashMap<>();
+	private volatile CommentIndex comments;
+
+	public static MappingIndex of(Mappings mappings) {
+		return INDEXES.getUnchecked(mappings);
+	}
+
+	/** Make an index which isn't shared, holding on to the given mappings itself */
+	public static MappingIndex standalone(Mappings mappings) {
+		return new MappingIndex(() -> mappings);
+	}
+
+	private MappingIndex(Supplier<Mappings> mappings) {
+		this.mappings = mappings;
+	}
+
+	private Mappings mappings() {
+		Mappings mappings = this.mappings.get();
+		if (mappings == null) throw new IllegalStateException("Mappings were collected whilst their index was still in use");
+		return mappings;
+	}
+
+	private static <K, E> IntermediaryTable<K, E> index(Collection<E> entries, Function<E, K> key, IntermediaryTable<K, E> out) {
+		for (E entry : entries) {
+			K name = key.apply(entry);
+			if (name != null) out.put(name, entry);
+		}
+
+		return out;
+	}
+
+	private IntermediaryTable<String, ClassEntry> classes(String namespace) {
+		return classes.computeIfAbsent(namespace, ns -> index(mappings().getClassEntries(), entry -> entry.get(ns), new IntermediaryTable<>("class_", Function.identity())));
+	}
+
+	private IntermediaryTable<EntryTriple, MethodEntry> methods(String namespace) {
+		return methods.computeIfAbsent(namespace, ns -> index(mappings().getMethodEntries(), entry -> entry.get(ns), new IntermediaryTable<>("method_", EntryTriple::getName)));
+	}
+
+	private IntermediaryTable<EntryTriple, FieldEntry> fields(String namespace) {
+		return fields.computeIfAbsent(namespace, ns -> index(mappings().getFieldEntries(), entry -> entry.get(ns), new IntermediaryTable<>("field_", EntryTriple::getName)));
+	}
+
+	/** All the class names in the given namespace */
+	public Set<String> getClassNames(String namespace) {
+		return classes(namespace).keySet();
+	}
+
+	public ClassEntry findClass(String namespace, String name) {
+		return classes(namespace).get(name);
+	}
+
+	public MethodEntry findMethod(String namespace, EntryTriple method) {
+		return methods(namespace).get(method);
+	}
+
+	public FieldEntry findField(String namespace, EntryTriple field) {
+		return fields(namespace).get(field);
+	}
+
+	/** Map the given class from one namespace to another, or {@code null} if it isn't in the mappings */
+	public String mapClass(String from, String to, String name) {
+		ClassEntry entry = findClass(from, name);
+		return entry != null ? entry.get(to) : null;
+	}
+
+	/** Map the given method from one namespace to another, or {@code null} if it isn't in the mappings */
+	public EntryTriple mapMethod(String from, String to, EntryTriple method) {
+		MethodEntry entry = findMethod(from, method);
+		return entry != null ? entry.get(to) : null;
+	}
+
+	/** Map the given field from one namespace to another, or {@code null} if it isn't in the mappings */
+	public EntryTriple mapField(String from, String to, EntryTriple field) {
+		FieldEntry entry = findField(from, field);
+		return entry != null ? entry.get(to) : null;
+	}
+
+	private static class CommentIndex {
+		final Map<String, List<String>> classes = new HashMap<>();
+		final Map<EntryTriple, List<String>> methods = new HashMap<>();
+		final Map<EntryTriple, List<Parameter>> parameters = new HashMap<>();
+		final Map<EntryTriple, List<String>> fields = new HashMap<>();
+
+		CommentIndex(Comments comments) {
+			for (CommentEntry.Class comment : comments.getClassComments()) {
+				classes.put(comment.getClassName(), comment.getComments());
+			}
+			for (CommentEntry.Method comment : comments.getMethodComments()) {
+				methods.put(comment.getMethod(), comment.getComments());
+			}
+			for (Parameter comment : comments.getMethodParameterComments()) {
+				parameters.computeIfAbsent(comment.getParameter().getMethod(), k -> new ArrayList<>()).add(comment);
+			}
+			parameters.replaceAll((method, params) -> {
+				params.sort(Comparator.comparingInt(param -> param.getParameter().getLocalVariableIndex()));
+				return Collections.unmodifiableList(params);
+			});
+			for (CommentEntry.Field comment : comments.getFieldComments()) {
+				fields.put(comment.getField(), comment.getComments());
+			}
+		}
+	}
+
+	private CommentIndex comments() {
+		CommentIndex comments = this.comments;
+
+		if (comments == null) {
+			Mappings mappings = mappings();
+			if (!(mappings instanceof ExtendedMappings)) throw new IllegalStateException("Mappings don't carry comments: " + mappings);
+
+			synchronized (this) {
+				if ((comments = this.comments) == null) {
+					this.comments = comments = new CommentIndex(((ExtendedMappings) mappings).getComments());
+				}
+			}
+		}
+
+		return comments;
+	}
+
+	/** The comment lines for the given class in the primary namespace, or {@code null} if it has none */
+	public List<String> getClassComments(String className) {
+		return comments().classes.get(className);
+	}
+
+	/** The comment lines for the given method in the primary namespace, or {@code null} if it has none */
+	public List<String> getMethodComments(EntryTriple method) {
+		return comments().methods.get(method);
+	}
+
+	/** The comments for the parameters of the given method in the primary namespace ordered by index, or {@code null} if there are none */
+	public List<Parameter> getParameterComments(EntryTriple method) {
+		return comments().parameters.get(method);
+	}
+
+	/** The comment lines for the given field in the primary namespace, or {@code null} if it has none */
+	public List<String> getFieldComments(EntryTriple field) {
+		return comments().fields.get(field);
+	}
+}
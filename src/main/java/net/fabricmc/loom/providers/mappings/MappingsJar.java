@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a mappings jar holding a single {@code mappings/mappings.tiny} directly, deflating it with a {@link BlockDeflaterOutputStream}
+ * rather than having a zip file system stage and compress it on a single thread when it is closed.
+ */
+public final class MappingsJar {
+	private static final String DIRECTORY = "mappings/";
+	private static final String ENTRY = DIRECTORY + "mappings.tiny";
+	private static final int LOCAL_HEADER = 0x04034B50, DATA_DESCRIPTOR = 0x08074B50, CENTRAL_HEADER = 0x02014B50, END_OF_DIRECTORY = 0x06054B50;
+	private static final int FLAG_DATA_DESCRIPTOR = 1 << 3, FLAG_UTF8 = 1 << 11;
+
+	private MappingsJar() {
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		long written;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			written++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			written += len;
+		}
+	}
+
+	private static int dosTime(LocalDateTime time) {
+		if (time.getYear() < 1980) return (1 << 21) | (1 << 16);
+		return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+
+	private static ByteBuffer header(int signature, int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN).putInt(signature);
+	}
+
+	/** Write the given tiny file into a jar at the given location, replacing it only once the jar is complete */
+	public static void write(Path tiny, Path jar) throws IOException {
+		Path temp = Files.createTempFile(jar.toAbsolutePath().getParent(), jar.getFileName().toString(), ".tmp");
+
+		try {
+			int time = dosTime(LocalDateTime.now());
+			byte[] directory = DIRECTORY.getBytes(StandardCharsets.UTF_8);
+			byte[] entry = ENTRY.getBytes(StandardCharsets.UTF_8);
+
+			try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.write(header(LOCAL_HEADER, 30 + directory.length).putShort((short) 10).putShort((short) FLAG_UTF8).putShort((short) ZipEntry.STORED)
+						.putInt(time).putInt(0).putInt(0).putInt(0).putShort((short) directory.length).putShort((short) 0).put(directory).array());
+
+				long entryOffset = out.written;
+				out.write(header(LOCAL_HEADER, 30 + entry.length).putShort((short) 20).putShort((short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8)).putShort((short) ZipEntry.DEFLATED)
+						.putInt(time).putInt(0).putInt(0).putInt(0).putShort((short) entry.length).putShort((short) 0).put(entry).array());
+
+				BlockDeflaterOutputStream deflater = new BlockDeflaterOutputStream(out);
+				Files.copy(tiny, deflater);
+				deflater.finish();
+
+				if (deflater.getSize() >= 0xFFFFFFFFL || deflater.getCompressedSize() >= 0xFFFFFFFFL) {
+					throw new IOException("Mappings too large to fit in a jar without Zip64: " + deflater.getSize() + " bytes");
+				}
+				int crc = (int) deflater.getCRC(), compressedSize = (int) deflater.getCompressedSize(), size = (int) deflater.getSize();
+				out.write(header(DATA_DESCRIPTOR, 16).putInt(crc).putInt(compressedSize).putInt(size).array());
+
+				long directoryOffset = out.written;
+				out.write(header(CENTRAL_HEADER, 46 + directory.length).putShort((short) 20).putShort((short) 10).putShort((short) FLAG_UTF8).putShort((short) ZipEntry.STORED)
+						.putInt(time).putInt(0).putInt(0).putInt(0).putShort((short) directory.length).putShort((short) 0).putShort((short) 0).putShort((short) 0)
+						.putShort((short) 0).putInt(0x10).putInt(0).put(directory).array());
+				out.write(header(CENTRAL_HEADER, 46 + entry.length).putShort((short) 20).putShort((short) 20).putShort((short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8))
+						.putShort((short) ZipEntry.DEFLATED).putInt(time).putInt(crc).putInt(compressedSize).putInt(size).putShort((short) entry.length).putShort((short) 0)
+						.putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) entryOffset).put(entry).array());
+
+				long directorySize = out.written - directoryOffset;
+				out.write(header(END_OF_DIRECTORY, 22).putShort((short) 0).putShort((short) 0).putShort((short) 2).putShort((short) 2)
+						.putInt((int) directorySize).putInt((int) directoryOffset).putShort((short) 0).array());
+			}
+
+			Files.move(temp, jar, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
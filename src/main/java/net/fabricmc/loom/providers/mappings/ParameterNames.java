@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.BiConsumer;
+
+/**
+ * A compact binary store of method parameter names, keyed by {@code owner/name(desc)}.
+ *
+ * <p>The file is laid out as a run of records in the order they were written, each holding the method key and its
+ * local variable index to name slots, ending with a marker so a truncated file can be spotted. Tiny Remapper can only
+ * take parameter names as a map it fills itself, so the records are only ever streamed straight into it rather than
+ * looked up individually. Nothing is held open between reads, so the file can always be replaced or deleted.
+ */
+public final class ParameterNames {
+	private static final int MAGIC = 0x4C504E31; //LPN1
+	private static final int VERSION = 2;
+	private static final int NULL = -1;
+
+	private ParameterNames() {
+	}
+
+	private static DataInputStream open(Path file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+		try {
+			if (in.readInt() != MAGIC) throw new IOException("Invalid parameter names header");
+			int version = in.readInt();
+			if (version != VERSION) throw new IOException("Unexpected parameter names version " + version);
+		} catch (Throwable t) {
+			in.close();
+			throw t;
+		}
+
+		return in;
+	}
+
+	/** Check the given file looks like parameter names which can be read, throwing an {@link IOException} if not */
+	public static void check(Path file) throws IOException {
+		open(file).close();
+	}
+
+	private static String readString(DataInputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Pass every method in the given file with its parameter names to the given consumer, in the order they were written */
+	public static void read(Path file, BiConsumer<String, String[]> consumer) throws IOException {
+		try (DataInputStream in = open(file)) {
+			for (int length = in.readInt(); length != NULL; length = in.readInt()) {
+				String method = readString(in, length);
+
+				String[] names = new String[in.readInt()];
+				for (int i = 0; i < names.length; i++) {
+					int nameLength = in.readInt();
+					if (nameLength != NULL) names[i] = readString(in, nameLength);
+				}
+
+				consumer.accept(method, names);
+			}
+
+			if (in.readInt() != MAGIC) throw new IOException("Truncated parameter names");
+		}
+	}
+
+	public static Writer write(Path file) throws IOException {
+		return new Writer(file);
+	}
+
+	public static final class Writer implements Closeable {
+		private final Path file, temp;
+		private final DataOutputStream out;
+		private boolean done;
+
+		Writer(Path file) throws IOException {
+			this.file = file;
+			temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		}
+
+		/** Add the parameter names for the given {@code owner/name(desc)}, indexed by local variable index with gaps left as {@code null} */
+		public void accept(String method, String[] names) throws IOException {
+			writeString(method);
+			out.writeInt(names.length);
+			for (String name : names) {
+				if (name != null) {
+					writeString(name);
+				} else {
+					out.writeInt(NULL);
+				}
+			}
+		}
+
+		private void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/** Mark the file as complete, without which closing will discard everything written */
+		public void commit() {
+			done = true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (done) {
+					out.writeInt(NULL);
+					out.writeInt(MAGIC);
+				}
+				out.close();
+
+				if (done) Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+
+/**
+ * A record of each class in an Intermediary jar, holding a hash of its contents along with a fingerprint of every mapping for each Intermediary
+ * name it refers to. Comparing the index made for a jar with new mappings against the one made for its last named jar shows which classes will
+ * come out the same, and thus can be copied across rather than remapped again.
+ *
+ * <p>As Intermediary gives every method the same name as those it overrides, the mappings for a name are fingerprinted together regardless of
+ * which class they are for. This means a class is marked changed if the mappings for anything in its hierarchy which it overrides change too.
+ * Any mapping which can't be pinned to the classes using it, such as renaming a class without an Intermediary name, is fingerprinted into the
+ * index's settings instead so that changing it remaps everything.
+ */
+public final class RemapIndex {
+	private static final int MAGIC = 0x52494458; //RIDX
+	private static final int VERSION = 2;
+	private static final HashFunction HASHER = Hashing.murmur3_128();
+
+	public static final class ClassState {
+		final long contents, mappings;
+
+		ClassState(long contents, long mappings) {
+			this.contents = contents;
+			this.mappings = mappings;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof ClassState)) return false;
+
+			ClassState that = (ClassState) obj;
+			return contents == that.contents && mappings == that.mappings;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(contents) * 31 + Long.hashCode(mappings);
+		}
+	}
+
+	/** A hash of anything which changes the output of every class, such as the settings the remapper is made with */
+	private final long settings;
+	private final Path namedJar;
+	private final Map<String, ClassState> classes;
+
+	private RemapIndex(long settings, Path namedJar, Map<String, ClassState> classes) {
+		this.settings = settings;
+		this.namedJar = namedJar;
+		this.classes = classes;
+	}
+
+	/** The named jar which this index was made for */
+	public Path getNamedJar() {
+		return namedJar;
+	}
+
+	/** Get the names of the classes which would remap differently to how they did when the given index was made, or {@code null} if everything would */
+	public Set<String> findChanges(RemapIndex previous) {
+		if (settings != previous.settings) return null;
+
+		Set<String> changed = new HashSet<>();
+		for (Entry<String, ClassState> entry : classes.entrySet()) {
+			if (!entry.getValue().equals(previous.classes.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+		return changed;
+	}
+
+	public Set<String> getClasses() {
+		return Collections.unmodifiableSet(classes.keySet());
+	}
+
+	/** Give a hash of the given mappings, for the settings of an index when the mappings used before the named ones need to stay the same too */
+	public static long hashMappings(IMappingProvider mappings) {
+		Map<String, String> classMap = new HashMap<>(), fieldMap = new HashMap<>(), methodMap = new HashMap<>();
+		Map<String, String[]> localMap = new HashMap<>();
+		mappings.load(classMap, fieldMap, methodMap, localMap);
+
+		long hash = 0;
+		for (Map<String, String> map : Arrays.asList(classMap, fieldMap, methodMap)) {
+			for (Entry<String, String> entry : map.entrySet()) {
+				hash += hash(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Entry<String, String[]> entry : localMap.entrySet()) {
+			hash += hash(entry.getKey(), String.join("\0", entry.getValue()));
+		}
+		return hash;
+	}
+
+	private static long hash(String key, String value) {
+		return HASHER.newHasher().putString(key, StandardCharsets.UTF_8).putByte((byte) 0).putString(String.valueOf(value), StandardCharsets.UTF_8).hash().asLong();
+	}
+
+	private static int memberEnd(String key) {
+		int end = key.indexOf('(');
+		return end < 0 ? key.indexOf(";;") : end;
+	}
+
+	/**
+	 * Find the name which the classes using the given key from a Tiny Remapper mapping table will contain, or {@code null} if there isn't one.
+	 * This is the member's name for methods and fields ({@code owner/name(desc)} or {@code owner/name;;desc}) if it's an Intermediary name, or
+	 * the last Intermediary name in a class' name (as any reference to the class must include it).
+	 */
+	private static String keyToken(String key) {
+		int end = memberEnd(key);
+
+		if (end >= 0) {
+			String member = key.substring(key.lastIndexOf('/', end) + 1, end);
+			return member.startsWith("method_") || member.startsWith("field_") ? member : null;
+		}
+
+		for (end = key.length(); end > 0; ) {
+			int start = Math.max(key.lastIndexOf('/', end - 1), key.lastIndexOf('$', end - 1)) + 1;
+			if (key.startsWith("class_", start)) return key.substring(start, end);
+			end = start - 1;
+		}
+
+		return null;
+	}
+
+	/** Whether the given key maps to the name it already has, thus never changing the classes which use it */
+	private static boolean isIdentity(String key, String value) {
+		int end = memberEnd(key);
+		if (end < 0) return key.equals(value);
+
+		int start = key.lastIndexOf('/', end) + 1;
+		return end - start == value.length() && key.startsWith(value, start);
+	}
+
+	private static boolean isNamePart(int c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+	private static final byte[][] PREFIXES = {"class_".getBytes(StandardCharsets.US_ASCII), "method_".getBytes(StandardCharsets.US_ASCII), "field_".getBytes(StandardCharsets.US_ASCII)};
+	/** Find every Intermediary style name in the given class, any extras only making a class look changed more often than it needs to */
+	static Set<String> findTokens(byte[] bytes) {
+		Set<String> tokens = new HashSet<>();
+
+		for (int i = 0, end = bytes.length; i < end; i++) {
+			if (i > 0 && isNamePart(bytes[i - 1])) continue;
+
+			prefixes: for (byte[] prefix : PREFIXES) {
+				if (i + prefix.length >= end) continue;
+
+				for (int j = 0; j < prefix.length; j++) {
+					if (bytes[i + j] != prefix[j]) continue prefixes;
+				}
+
+				int digits = i + prefix.length;
+				while (digits < end && bytes[digits] >= '0' && bytes[digits] <= '9') digits++;
+
+				if (digits > i + prefix.length) {
+					tokens.add(new String(bytes, i, digits - i, StandardCharsets.US_ASCII));
+					i = digits - 1;
+				}
+				break;
+			}
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Index the given Intermediary jar against the given Intermediary to named mappings
+	 *
+	 * @param settings A hash of anything else which would change how every class is remapped
+	 * @param namedJar The named jar which is being made from the Intermediary jar
+	 */
+	public static RemapIndex create(Path interJar, IMappingProvider namedMappings, long settings, Path namedJar) throws IOException {
+		Map<String, String> classMap = new HashMap<>(), fieldMap = new HashMap<>(), methodMap = new HashMap<>();
+		Map<String, String[]> localMap = new HashMap<>();
+		namedMappings.load(classMap, fieldMap, methodMap, localMap);
+
+		Map<String, Long> tokens = new HashMap<>();
+		long loose = 0; //Mappings which could change any class
+		for (Map<String, String> map : Arrays.asList(classMap, fieldMap, methodMap)) {
+			for (Entry<String, String> entry : map.entrySet()) {
+				String token = keyToken(entry.getKey());
+				long hash = hash(entry.getKey(), entry.getValue());
+
+				if (token != null) {
+					tokens.merge(token, hash, Long::sum);
+				} else if (!isIdentity(entry.getKey(), entry.getValue())) {
+					loose += hash;
+				}
+			}
+		}
+		for (Entry<String, String[]> entry : localMap.entrySet()) {
+			String key = entry.getKey();
+			long hash = hash(key, String.join("\0", entry.getValue()));
+
+			int end = memberEnd(key);
+			if (end >= 0) {//Only the class which has the method can have its locals
+				tokens.merge(key.substring(0, Math.max(key.lastIndexOf('/', end), 0)), hash, Long::sum);
+			} else {
+				loose += hash;
+			}
+		}
+
+		Map<String, ClassState> classes = new ConcurrentHashMap<>();
+		try (ZipFile jar = new ZipFile(interJar.toFile())) {
+			Collections.list(jar.entries()).parallelStream().filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class")).forEach(entry -> {
+				byte[] bytes;
+				try (InputStream in = jar.getInputStream(entry)) {
+					bytes = ByteStreams.toByteArray(in);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error reading " + entry.getName() + " from " + interJar, e);
+				}
+
+				String name = entry.getName();
+				name = name.substring(0, name.length() - 6);
+
+				Set<String> found = findTokens(bytes);
+				found.add(name); //Locals are fingerprinted by the name of the class they are in
+
+				long mappings = 0;
+				for (String token : found) {
+					mappings += hash(token, String.valueOf(tokens.getOrDefault(token, 0L)));
+				}
+
+				classes.put(name, new ClassState(HASHER.hashBytes(bytes).asLong(), mappings));
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		return new RemapIndex(settings * 31 + loose, namedJar.toAbsolutePath(), classes);
+	}
+
+	/** Read the index from the given file, or {@code null} if there isn't a (readable) one */
+	public static RemapIndex read(Path file) {
+		if (Files.notExists(file)) return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+
+			long settings = in.readLong();
+			Path namedJar = Paths.get(in.readUTF());
+
+			int count = in.readInt();
+			if (count < 0) return null; //Corrupt
+
+			Map<String, ClassState> classes = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				classes.put(in.readUTF(), new ClassState(in.readLong(), in.readLong()));
+			}
+
+			return new RemapIndex(settings, namedJar, classes);
+		} catch (IOException | IllegalArgumentException e) {
+			return null; //Can always remap the whole jar instead
+		}
+	}
+
+	public void write(Path file) throws IOException {
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(settings);
+			out.writeUTF(namedJar.toString());
+
+			out.writeInt(classes.size());
+			for (Entry<String, ClassState> entry : classes.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().contents);
+				out.writeLong(entry.getValue().mappings);
+			}
+		} catch (Throwable t) {
+			Files.deleteIfExists(temp);
+			throw t;
+		}
+
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/** Whether the given jar holds every class in the given collection, having been renamed by the given mapping */
+	public static boolean hasAll(Path jar, Set<String> classes, Map<String, String> classMap) throws IOException {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			for (String name : classes) {
+				ZipEntry entry = zip.getEntry(classMap.getOrDefault(name, name) + ".class");
+				if (entry == null) return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/** An open addressed map keyed by {@link SymbolTable} ids, either a single symbol or a pair of them packed via {@link #key(int, int)} */
+final class SymbolMap<T> {
+	private long[] keys;
+	private Object[] values;
+	private int size;
+
+	public static long key(int symbol) {
+		return symbol;
+	}
+
+	public static long key(int name, int desc) {
+		return (long) name << 32 | desc & 0xFFFFFFFFL;
+	}
+
+	private static int hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32);
+	}
+
+	private int slot(long key) {
+		int mask = keys.length - 1;
+
+		int slot = hash(key) & mask;
+		while (values[slot] != null && keys[slot] != key) slot = slot + 1 & mask;
+
+		return slot;
+	}
+
+	public boolean containsKey(long key) {
+		return size > 0 && values[slot(key)] != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		return size > 0 ? (T) values[slot(key)] : null;
+	}
+
+	public void put(long key, T value) {
+		Objects.requireNonNull(value, "Null values are not supported");
+
+		if (keys == null) {
+			keys = new long[8];
+			values = new Object[8];
+		}
+
+		int slot = slot(key);
+		if (values[slot] == null) {
+			keys[slot] = key;
+			values[slot] = value;
+
+			if (++size << 1 > keys.length) rehash();
+		} else {
+			values[slot] = value;
+		}
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+
+		keys = new long[oldKeys.length << 1];
+		values = new Object[oldValues.length << 1];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Stream<T> stream() {
+		return size > 0 ? Arrays.stream(values).filter(Objects::nonNull).map(value -> (T) value) : Stream.empty();
+	}
+
+	public Collection<T> values() {
+		return new AbstractCollection<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return new Iterator<T>() {
+					private final Object[] values = SymbolMap.this.values;
+					private int next = advance(0);
+
+					private int advance(int from) {
+						if (values == null) return -1;
+
+						for (int i = from; i < values.length; i++) {
+							if (values[i] != null) return i;
+						}
+
+						return -1;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next >= 0;
+					}
+
+					@Override
+					@SuppressWarnings("unchecked")
+					public T next() {
+						if (next < 0) throw new NoSuchElementException();
+
+						T value = (T) values[next];
+						next = advance(next + 1);
+						return value;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Stream<T> stream() {
+				return SymbolMap.this.stream();
+			}
+		};
+	}
+}
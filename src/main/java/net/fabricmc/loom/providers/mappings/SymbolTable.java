@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.Arrays;
+
+/** An open addressed interning table which hands out dense ids for each distinct {@link String} it is given */
+final class SymbolTable {
+	private String[] symbols = new String[64];
+	private int[] slots = new int[128]; //Symbol id + 1, with 0 being an empty slot
+	private int size;
+
+	private static int hash(String symbol) {
+		int hash = symbol.hashCode() * 0x9E3779B9;
+		return hash ^ hash >>> 16;
+	}
+
+	/** Find the id for the given symbol, or {@code -1} if it has never been interned */
+	public int find(String symbol) {
+		int mask = slots.length - 1;
+
+		for (int slot = hash(symbol) & mask;; slot = slot + 1 & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0) return -1;
+			if (symbols[id].equals(symbol)) return id;
+		}
+	}
+
+	/** Find the id for the given symbol, adding it to the table if it is not already present */
+	public int intern(String symbol) {
+		int mask = slots.length - 1;
+
+		int slot = hash(symbol) & mask;
+		for (;; slot = slot + 1 & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0) break;
+			if (symbols[id].equals(symbol)) return id;
+		}
+
+		if (size == symbols.length) symbols = Arrays.copyOf(symbols, size << 1);
+		int id = size++;
+		symbols[id] = symbol;
+		slots[slot] = id + 1;
+
+		if (size << 1 > slots.length) rehash();
+		return id;
+	}
+
+	private void rehash() {
+		int[] slots = new int[this.slots.length << 1];
+		int mask = slots.length - 1;
+
+		for (int id = 0; id < size; id++) {
+			int slot = hash(symbols[id]) & mask;
+			while (slots[slot] != 0) slot = slot + 1 & mask;
+			slots[slot] = id + 1;
+		}
+
+		this.slots = slots;
+	}
+
+	/** Get the symbol for the given id */
+	public String get(int id) {
+		assert id >= 0 && id < size: "Unknown symbol " + id;
+		return symbols[id];
+	}
+
+	/** Get the canonical instance of the given symbol, interning it if needed */
+	public String canonical(String symbol) {
+		return symbol != null ? get(intern(symbol)) : null; //Interning might grow the table
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -31,6 +31,7 @@ import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -39,7 +40,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
@@ -119,68 +119,105 @@ public class TinyReader {
 		}
 	}
 
-	public static Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> readTiny(Path file, String commonNamespace) throws IOException {
-		try (InputStream in = getMappingStream(file)) {
-			Mappings mappings = MappingsProvider.readTinyMappings(in, false);
+	/** A view of a pair of columns from a Tiny V2 file to be read into an {@link IMappingAcceptor} by {@link TinyReader#readTinyV2(Path, Projection...)} */
+	public static class Projection {
+		final String from, to;
+		final IMappingAcceptor acceptor;
+		final boolean comments;
 
-			if (!mappings.getNamespaces().contains(commonNamespace)) {
-				throw new IllegalArgumentException("Namespace " + commonNamespace + " not found in " + file);
-			}
+		public Projection(String from, String to, IMappingAcceptor acceptor) {
+			this(from, to, acceptor, false);
+		}
 
-			Map<String, ? extends Set<MethodEntry>> methods = mappings.getMethodEntries().stream().collect(Collectors.groupingBy(method -> method.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
-			Map<String, ? extends Set<FieldEntry>> fields = mappings.getFieldEntries().stream().collect(Collectors.groupingBy(field -> field.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
+		public Projection(String from, String to, IMappingAcceptor acceptor, boolean comments) {
+			this.from = from;
+			this.to = to;
+			this.acceptor = acceptor;
+			this.comments = comments;
+		}
+	}
 
-			Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> out = mappings.getClassEntries().stream().collect(Collectors.toMap(Function.identity(), entry -> {
-				String name = entry.get(commonNamespace);
+	private static class ProjectionReader {
+		final IMappingAcceptor acceptor;
+		final int from, to;
+		final boolean comments;
+		/** Names in the primary column to those in the from column, or {@code null} if the from column is the primary column */
+		private final Map<String, String> classPool;
+		private final DescriptorRemapper descRemapper;
+
+		ProjectionReader(Projection projection, List<String> namespaces, Path file) {
+			acceptor = projection.acceptor;
+			from = namespaces.indexOf(projection.from);
+			if (from < 0) throw new IllegalArgumentException("Provided namespace " + projection.from + " was not in " + file);
+			to = namespaces.indexOf(projection.to);
+			if (to < 0) throw new IllegalArgumentException("Provided namespace " + projection.to + " was not in " + file);
+			comments = projection.comments;
+
+			if (from != 0) {
+				classPool = new HashMap<>();
+				descRemapper = new DescriptorRemapper(name -> classPool.getOrDefault(name, name));
+			} else {
+				classPool = null;
+				descRemapper = null;
+			}
+		}
 
-				Set<MethodEntry> entryMethods = methods.remove(name);
-				Set<FieldEntry> entryFields = fields.remove(name);
-				return Pair.of(entryMethods != null ? entryMethods : Collections.emptySet(), entryFields != null ? entryFields : Collections.emptySet());
-			}));
+		String from(String[] names) {
+			String name = names[from];
+			return name.isEmpty() ? names[0] : name;
+		}
 
-			for (Entry<String, ? extends Set<MethodEntry>> entry : methods.entrySet()) {
-				String className = entry.getKey();
+		String to(String[] names) {
+			String name = names[to];
+			return name.isEmpty() ? null : name;
+		}
 
-				Set<FieldEntry> entryFields = fields.remove(className);
-				out.put(namespace -> className, Pair.of(entry.getValue(), entryFields != null ? entryFields : Collections.emptySet()));
-			}
+		boolean needsClasses() {
+			return classPool != null;
+		}
 
-			for (Entry<String, ? extends Set<FieldEntry>> entry : fields.entrySet()) {
-				String className = entry.getKey();
-				out.put(namespace -> className, Pair.of(Collections.emptySet(), entry.getValue()));
-			}
+		void poolClass(String[] names) {
+			classPool.put(names[0], from(names));
+		}
 
-			return out;
+		void acceptClass(String[] names) {
+			acceptor.acceptClass(from(names), to(names));
+		}
+
+		String desc(String descriptor) {
+			return descRemapper != null ? descRemapper.apply(descriptor) : descriptor;
 		}
 	}
 
-	public static void fillFromColumn(Path file, String column, MappingBlob blob) throws IOException {
-		try (InputStream in = getMappingStream(file)) {
-			Mappings mappings = MappingsProvider.readTinyMappings(in, false);
+	/** Read just the class lines of the given Tiny V2 file, for the readers which need every class known before any member descriptors can be remapped */
+	private static void poolClasses(Path file, List<ProjectionReader> readers) throws IOException {
+		try (BufferedReader reader = getMappingReader(file)) {
+			reader.readLine(); //Skip over the header
 
-			if (!mappings.getNamespaces().contains(column)) {
-				throw new IllegalArgumentException("Namespace " + column + " not found in " + file);
-			}
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.startsWith("c\t")) continue; //Anything else is either indented or not a class
 
-			for (ClassEntry entry : mappings.getClassEntries()) {
-				blob.acceptClass(entry.get(column), null);
-			}
-			for (MethodEntry entry : mappings.getMethodEntries()) {
-				EntryTriple mapping = entry.get(column);
-				blob.acceptMethod(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
-			}
-			for (FieldEntry entry : mappings.getFieldEntries()) {
-				EntryTriple mapping = entry.get(column);
-				blob.acceptField(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
+				String[] names = line.substring(2).split("\t", -1);
+				for (ProjectionReader projection : readers) {
+					projection.poolClass(names);
+				}
 			}
 		}
 	}
 
-	public static void readComments(Path file, String from, UnaryOperator<String> classRemapper, IMappingAcceptor mappingAcceptor) throws IOException {
-		try (Reader in = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
-			TinyV2Visitor.read(in, new MappingsVisitor() {
-				private int index;
+	public static void readTinyV2(Path file, Projection... projections) throws IOException {
+		List<String> namespaces = readHeaders(file);
+		List<ProjectionReader> readers = new ArrayList<>(projections.length);
+		for (Projection projection : projections) {
+			readers.add(new ProjectionReader(projection, namespaces, file));
+		}
+
+		//Descriptors are given in the primary column, so every class needs to be known first for any reader which isn't using it
+		List<ProjectionReader> pooling = readers.stream().filter(ProjectionReader::needsClasses).collect(Collectors.toList());
+		if (!pooling.isEmpty()) poolClasses(file, pooling);
 
+		try (Reader in = getMappingReader(file)) {
+			TinyV2Visitor.read(in, new MappingsVisitor() {
 				@Override
 				public void visitVersion(int major, int minor) {
 					assert major == 2;
@@ -195,28 +232,58 @@ public class TinyReader {
 				}
 
 				@Override
-				public void visitNamespaces(String... namespaces) {
-					index = Arrays.asList(namespaces).indexOf(from);
-					if (index < 0) throw new IllegalArgumentException("Provided namespace " + from + " was not in " + file);
+				public void visitNamespaces(String... columns) {
+					assert namespaces.equals(Arrays.asList(columns));
 				}
 
 				@Override
 				public ClassVisitor visitClass(long offset, String[] names) {
-					return new ClassVisitor() {
-						private final String className = names[index];
+					String[] classNames = new String[readers.size()];
+					for (int i = 0; i < classNames.length; i++) {
+						ProjectionReader reader = readers.get(i);
 
+						reader.acceptClass(names);
+						classNames[i] = reader.from(names);
+					}
+
+					return new ClassVisitor() {
 						@Override
 						public MethodVisitor visitMethod(long offset, String[] names, String descriptor) {
-							return new MethodVisitor() {
-								private final String name = names[index];
-								private final String desc = index == 0 ? descriptor : MappingBlob.remapDesc(descriptor, classRemapper);
+							String[] methodNames = new String[classNames.length];
+							String[] methodDescs = new String[classNames.length];
+							for (int i = 0; i < methodNames.length; i++) {
+								ProjectionReader reader = readers.get(i);
+								String className = classNames[i];
+								String name = methodNames[i] = reader.from(names);
+								String desc = methodDescs[i] = reader.desc(descriptor);
+								String newName = reader.to(names);
+
+								reader.acceptor.acceptMethod(className, name, desc, null, newName, null);
+							}
 
+							return new MethodVisitor() {
 								@Override
 								public ParameterVisitor visitParameter(long offset, String[] names, int localVariableIndex) {
+									for (int i = 0; i < methodNames.length; i++) {
+										ProjectionReader reader = readers.get(i);
+										String className = classNames[i];
+										String name = methodNames[i];
+										String arg = reader.to(names);
+
+										if (arg != null) reader.acceptor.acceptMethodArg(className, name, methodDescs[i], localVariableIndex, arg);
+									}
+
 									return new ParameterVisitor() {
 										@Override
 										public void visitComment(String line) {
-											mappingAcceptor.acceptMethodArgComment(className, name, desc, localVariableIndex, line);
+											for (int i = 0; i < methodNames.length; i++) {
+												ProjectionReader reader = readers.get(i);
+												if (!reader.comments) continue;
+												String className = classNames[i];
+												String name = methodNames[i];
+
+												reader.acceptor.acceptMethodArgComment(className, name, methodDescs[i], localVariableIndex, line);
+											}
 										}
 									};
 								}
@@ -229,31 +296,159 @@ public class TinyReader {
 
 								@Override
 								public void visitComment(String line) {
-									mappingAcceptor.acceptMethodComment(className, name, desc, line);
+									for (int i = 0; i < methodNames.length; i++) {
+										ProjectionReader reader = readers.get(i);
+										if (!reader.comments) continue;
+										String className = classNames[i];
+										String name = methodNames[i];
+
+										reader.acceptor.acceptMethodComment(className, name, methodDescs[i], line);
+									}
 								}
 							};
 						}
 
 						@Override
 						public FieldVisitor visitField(long offset, String[] names, String descriptor) {
-							return new FieldVisitor() {
-								private final String name = names[index];
-								private final String desc = index == 0 ? descriptor : MappingBlob.remapDesc(descriptor, classRemapper);
+							String[] fieldNames = new String[classNames.length];
+							String[] fieldDescs = new String[classNames.length];
+							for (int i = 0; i < fieldNames.length; i++) {
+								ProjectionReader reader = readers.get(i);
+								String className = classNames[i];
+								String name = fieldNames[i] = reader.from(names);
+								String desc = fieldDescs[i] = reader.desc(descriptor);
+								String newName = reader.to(names);
+
+								reader.acceptor.acceptField(className, name, desc, null, newName, null);
+							}
 
+							return new FieldVisitor() {
 								@Override
 								public void visitComment(String line) {
-									mappingAcceptor.acceptFieldComment(className, name, desc, line);
+									for (int i = 0; i < fieldNames.length; i++) {
+										ProjectionReader reader = readers.get(i);
+										if (!reader.comments) continue;
+										String className = classNames[i];
+										String name = fieldNames[i];
+
+										reader.acceptor.acceptFieldComment(className, name, fieldDescs[i], line);
+									}
 								}
 							};
 						}
 
 						@Override
 						public void visitComment(String line) {
-							mappingAcceptor.acceptClassComment(className, line);
+							for (int i = 0; i < classNames.length; i++) {
+								ProjectionReader reader = readers.get(i);
+								if (reader.comments) reader.acceptor.acceptClassComment(classNames[i], line);
+							}
 						}
 					};
 				}
 			});
 		}
 	}
+
+	public static Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> readTiny(Path file, String commonNamespace) throws IOException {
+		try (InputStream in = getMappingStream(file)) {
+			Mappings mappings = MappingsProvider.readTinyMappings(in, false);
+
+			if (!mappings.getNamespaces().contains(commonNamespace)) {
+				throw new IllegalArgumentException("Namespace " + commonNamespace + " not found in " + file);
+			}
+
+			Map<String, ? extends Set<MethodEntry>> methods = mappings.getMethodEntries().stream().collect(Collectors.groupingBy(method -> method.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
+			Map<String, ? extends Set<FieldEntry>> fields = mappings.getFieldEntries().stream().collect(Collectors.groupingBy(field -> field.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
+
+			Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> out = mappings.getClassEntries().stream().collect(Collectors.toMap(Function.identity(), entry -> {
+				String name = entry.get(commonNamespace);
+
+				Set<MethodEntry> entryMethods = methods.remove(name);
+				Set<FieldEntry> entryFields = fields.remove(name);
+				return Pair.of(entryMethods != null ? entryMethods : Collections.emptySet(), entryFields != null ? entryFields : Collections.emptySet());
+			}));
+
+			for (Entry<String, ? extends Set<MethodEntry>> entry : methods.entrySet()) {
+				String className = entry.getKey();
+
+				Set<FieldEntry> entryFields = fields.remove(className);
+				out.put(namespace -> className, Pair.of(entry.getValue(), entryFields != null ? entryFields : Collections.emptySet()));
+			}
+
+			for (Entry<String, ? extends Set<FieldEntry>> entry : fields.entrySet()) {
+				String className = entry.getKey();
+				out.put(namespace -> className, Pair.of(Collections.emptySet(), entry.getValue()));
+			}
+
+			return out;
+		}
+	}
+
+	public static void fillFromColumn(Path file, String column, MappingBlob blob) throws IOException {
+		try (InputStream in = getMappingStream(file)) {
+			Mappings mappings = MappingsProvider.readTinyMappings(in, false);
+
+			if (!mappings.getNamespaces().contains(column)) {
+				throw new IllegalArgumentException("Namespace " + column + " not found in " + file);
+			}
+
+			for (ClassEntry entry : mappings.getClassEntries()) {
+				blob.acceptClass(entry.get(column), null);
+			}
+			for (MethodEntry entry : mappings.getMethodEntries()) {
+				EntryTriple mapping = entry.get(column);
+				blob.acceptMethod(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
+			}
+			for (FieldEntry entry : mappings.getFieldEntries()) {
+				EntryTriple mapping = entry.get(column);
+				blob.acceptField(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Read only the comments from the given Tiny V2 file, along with the argument names so any argument comments can be named.
+	 * This is done separately from {@link #readTinyV2(Path, Projection...)} so comments only need reading when something actually wants them.
+	 */
+	public static void readComments(Path file, String from, String to, IMappingAcceptor mappingAcceptor) throws IOException {
+		readTinyV2(file, new Projection(from, to, new IMappingAcceptor() {
+			@Override
+			public void acceptClass(String srcName, String dstName) {
+			}
+
+			@Override
+			public void acceptMethod(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
+			}
+
+			@Override
+			public void acceptMethodArg(String srcClsName, String srcMethodName, String srcMethodDesc, int lvIndex, String dstArgName) {
+				mappingAcceptor.acceptMethodArg(srcClsName, srcMethodName, srcMethodDesc, lvIndex, dstArgName);
+			}
+
+			@Override
+			public void acceptField(String srcClsName, String srcName, String srcDesc, String dstClsName, String dstName, String dstDesc) {
+			}
+
+			@Override
+			public void acceptClassComment(String className, String comment) {
+				mappingAcceptor.acceptClassComment(className, comment);
+			}
+
+			@Override
+			public void acceptMethodComment(String className, String methodName, String desc, String comment) {
+				mappingAcceptor.acceptMethodComment(className, methodName, desc, comment);
+			}
+
+			@Override
+			public void acceptMethodArgComment(String className, String methodName, String desc, int lvIndex, String comment) {
+				mappingAcceptor.acceptMethodArgComment(className, methodName, desc, lvIndex, comment);
+			}
+
+			@Override
+			public void acceptFieldComment(String className, String fieldName, String desc, String comment) {
+				mappingAcceptor.acceptFieldComment(className, fieldName, desc, comment);
+			}
+		}, true));
+	}
 }
\ No newline at end of file
@@ -9,7 +9,6 @@ package net.fabricmc.loom.providers.mappings;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UncheckedIOException;
@@ -19,31 +18,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.function.BiFunction;
-import java.util.function.Function;
-import java.util.function.UnaryOperator;
-import java.util.stream.Collectors;
+
+import com.google.common.base.Strings;
 
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
-import net.fabricmc.mappings.EntryTriple;
-import net.fabricmc.mappings.ExtendedMappings;
-import net.fabricmc.mappings.MappingsProvider;
 import net.fabricmc.mappings.TinyV2Visitor;
-import net.fabricmc.mappings.model.CommentEntry;
-import net.fabricmc.mappings.model.CommentEntry.Class;
-import net.fabricmc.mappings.model.CommentEntry.Field;
-import net.fabricmc.mappings.model.CommentEntry.LocalVariableComment;
-import net.fabricmc.mappings.model.CommentEntry.Method;
-import net.fabricmc.mappings.model.CommentEntry.Parameter;
-import net.fabricmc.mappings.model.Comments;
-import net.fabricmc.mappings.model.LocalVariable;
-import net.fabricmc.mappings.model.MethodParameter;
 import net.fabricmc.mappings.visitor.ClassVisitor;
 import net.fabricmc.mappings.visitor.FieldVisitor;
 import net.fabricmc.mappings.visitor.LocalVisitor;
@@ -53,13 +33,13 @@ import net.fabricmc.mappings.visitor.ParameterVisitor;
 
 public class TinyV2toV1 {
 	public static void convert(Path input, Path output) {
-		convert(input, output, null, null);
+		convert(input, output, null);
 	}
 
-	public static void convert(Path input, Path output, Path params, Path comments) {
+	public static void convert(Path input, Path output, Path params) {
 		try (Reader in = new InputStreamReader(Files.newInputStream(input), StandardCharsets.UTF_8);
 				BufferedWriter out = Files.newBufferedWriter(output);
-				BufferedWriter paramOut = params != null ? Files.newBufferedWriter(params) : null) {
+				ParameterNames.Writer paramOut = params != null ? ParameterNames.write(params) : null) {
 			TinyV2Visitor.read(in, new MappingsVisitor() {
 				private final boolean writeParams = paramOut != null;
 				private List<String> namespaces;
@@ -124,7 +104,9 @@ public class TinyV2toV1 {
 
 							@Override
 							public ParameterVisitor visitParameter(long offset, String[] names, int index) {
-								if (args.length <= index) {
+								if (args == null) {
+									args = new String[index + 1];
+								} else if (args.length <= index) {
 									args = Arrays.copyOf(args, index + 1);
 								}
 
@@ -142,20 +124,10 @@ public class TinyV2toV1 {
 							}
 
 							public void write() {
+								if (args == null) return; //No parameters to write
+
 								try {
-									paramOut.write(className);
-									paramOut.write('/');
-									paramOut.write(method);
-									paramOut.write(desc);
-									paramOut.newLine();
-
-									for (int i = args.length - 1; i >= 0; i--) {
-										if (args[i] != null) {
-											paramOut.write('\t');
-											paramOut.write(args[i]);
-											paramOut.newLine();
-										}
-									}
+									paramOut.accept(className + '/' + method + desc, args);
 								} catch (IOException e) {
 									throw new UncheckedIOException("Error writing parameters in " + className + '#' + method + desc, e);
 								}
@@ -206,6 +178,7 @@ public class TinyV2toV1 {
 						private void writeParams() {
 							assert writeParams;
 							if (currentMethod != null) currentMethod.write();
+							currentMethod = null;
 							finaliser = null;
 						}
 
@@ -220,303 +193,115 @@ public class TinyV2toV1 {
 					if (finaliser != null) finaliser.run();
 				}
 			});
+
+			if (paramOut != null) paramOut.commit();
 		} catch (IOException e) {
 			throw new UncheckedIOException("Error preparing to convert " + input + " to " + output, e);
 		}
-
-		if (comments != null) writeCommentFile(input, comments);
 	}
 
-	private static class FullClassComments {
-		public final String className;
-		final List<Class> classComments = new ArrayList<>();
-		final List<Field> fieldComments = new ArrayList<>();
-		final List<Method> methodComments = new ArrayList<>();
-		final Map<EntryTriple, List<Parameter>> parameterComments = new HashMap<>();
-		final Map<EntryTriple, List<LocalVariableComment>> localVariableComments = new HashMap<>();
-
-		public FullClassComments(String className) {
-			this.className = className;
-		}
-	}
-
-	private static void writeCommentFile(Path from, Path to) {
-		try (InputStream in = Files.newInputStream(from); BufferedWriter out = Files.newBufferedWriter(to)) {
-			ExtendedMappings mappings = MappingsProvider.readFullTinyMappings(in, false);
-
-			if (!(mappings.getNamespaces() instanceof List<?>)) {
-				throw new AssertionError("Mapping namespaces in " + from + " not given in order?");
-			}
-			List<String> namespaces = (List<String>) mappings.getNamespaces();
-
-			if (namespaces.isEmpty()) {//There should actually be some mappings to convert
-				throw new IllegalArgumentException("Provided empty mappings at " + from);
-			}
-			String primary = namespaces.get(0);
-
-			Map<String, String> classCorrection;
-			Map<EntryTriple, EntryTriple> methodCorrection, fieldCorrection;
-			Map<MethodParameter, MethodParameter> paramCorrection;
-			Map<LocalVariable, LocalVariable> localCorrection;
-			if ("named".equals(primary)) {//Ideal case, comments will already be using the right names
-				classCorrection = Collections.emptyMap();
-				methodCorrection = fieldCorrection = Collections.emptyMap();
-				paramCorrection = Collections.emptyMap();
-				localCorrection = Collections.emptyMap();
-			} else {//Comments will be in the primary namespace instead of named, will have to remap them
-				classCorrection = mappings.getClassEntries().stream().collect(Collectors.toMap(entry -> entry.get(primary), entry -> entry.get("named")));
-				methodCorrection = mappings.getMethodEntries().stream().collect(Collectors.toMap(entry -> entry.get(primary), entry -> entry.get("named")));
-				fieldCorrection = mappings.getFieldEntries().stream().collect(Collectors.toMap(entry -> entry.get(primary), entry -> entry.get("named")));
-				paramCorrection = mappings.getMethodParameterEntries().stream().collect(Collectors.toMap(entry -> entry.get(primary), entry -> entry.get("named")));
-				localCorrection = mappings.getLocalVariableEntries().stream().collect(Collectors.toMap(entry -> entry.get(primary), entry -> entry.get("named")));
-			}
+	/**
+	 * Writes a named tiny v2 file of only the comments given to it, holding back each entry until a comment for it (or one of its children)
+	 * actually arrives. This allows the comments to be written as they are found without having to hold any more than the current path in memory.
+	 */
+	private static class CommentWriter {
+		private final BufferedWriter out;
+		private final List<String> pending = new ArrayList<>();
+		private int written;
 
-			Map<String, FullClassComments> classToComments = new HashMap<>();
-			Comments comments = mappings.getComments();
+		CommentWriter(BufferedWriter out) throws IOException {
+			this.out = out;
 
-			for (Class comment : comments.getClassComments()) {
-				remapComment(className -> {
-					return classToComments.computeIfAbsent(className, FullClassComments::new).classComments;
-				}, comment, Class::getClassName, classCorrection, Class::new);
-			}
-			for (Method comment : comments.getMethodComments()) {
-				remapComment(method -> {
-					return classToComments.computeIfAbsent(method.getOwner(), FullClassComments::new).methodComments;
-				}, comment, Method::getMethod, methodCorrection, Method::new);
-			}
-			for (Field comment : comments.getFieldComments()) {
-				remapComment(field -> {
-					return classToComments.computeIfAbsent(field.getOwner(), FullClassComments::new).fieldComments;
-				}, comment, Field::getField, fieldCorrection, Field::new);
-			}
-			for (Parameter comment : comments.getMethodParameterComments()) {
-				remapComment(param -> {
-					FullClassComments fullComments = classToComments.computeIfAbsent(param.getMethod().getOwner(), FullClassComments::new);
-					return fullComments.parameterComments.computeIfAbsent(param.getMethod(), k -> new ArrayList<>());
-				}, comment, Parameter::getParameter, paramCorrection, Parameter::new);
-			}
-			for (LocalVariableComment comment : comments.getLocalVariableComments()) {
-				remapComment(local -> {
-					FullClassComments fullComments = classToComments.computeIfAbsent(local.getMethod().getOwner(), FullClassComments::new);
-					return fullComments.localVariableComments.computeIfAbsent(local.getMethod(), k -> new ArrayList<>());
-				}, comment, LocalVariableComment::getLocalVariable, localCorrection, LocalVariableComment::new);
-			}
-
-			writeMappings(out, classToComments.values());
-		} catch (IOException e) {
-			throw new UncheckedIOException("Error converting " + from + " to " + to, e);
+			out.write("tiny\t2\t0\tnamed");
+			out.newLine();
 		}
-	}
 
-	private static <C extends CommentEntry, T> void remapComment(Function<T, List<C>> classToComments, C comment, Function<C, T> commentToTarget,
-			Map<T, T> correction, BiFunction<List<String>, T, C> reconstructor) {
-		T target = commentToTarget.apply(comment);
-		target = correction.getOrDefault(target, target);
-		classToComments.apply(target).add(reconstructor.apply(comment.getComments(), target));
-	}
-
-	public static void writeComments(BufferedWriter out, MappingBlob mappings) throws IOException {
-		List<FullClassComments> comments = new ArrayList<>();
-
-		UnaryOperator<String> remapper = className -> {
-			String triedMapping = mappings.tryMapName(className);
-			return triedMapping != null ? triedMapping : className;
-		};
-
-		for (Mapping mapping : mappings) {
-			if (!mapping.hasAnyComments()) continue; //Nothing to write
-
-			FullClassComments comment = new FullClassComments(mapping.toOr(mapping.from));
-			if (mapping.hasComment()) comment.classComments.add(new Class(Collections.singletonList(mapping.comment), mapping.to));
-
-			for (Mapping.Method method : mapping.methods()) {
-				if (!method.hasAnyComments()) continue;
-
-				EntryTriple entry = new EntryTriple(mapping.toOr(mapping.from), method.nameOr(method.fromName), method.desc(remapper));
-				if (method.hasComment()) comment.methodComments.add(new Method(Collections.singletonList(method.comment), entry));
-
-				method.iterateArgComments((argComment, index) -> {
-					comment.parameterComments.computeIfAbsent(entry, k -> new ArrayList<>())
-								.add(new Parameter(Collections.singletonList(argComment), new MethodParameter(entry, method.arg(index), index)));
-				});
-			}
-
-			for (Mapping.Field field : mapping.fields()) {
-				if (!field.hasComment()) continue;
-
-				EntryTriple entry = new EntryTriple(mapping.toOr(mapping.from), field.nameOr(field.fromName), field.desc(remapper));
-				comment.fieldComments.add(new Field(Collections.singletonList(field.comment), entry));
-			}
+		private void enter(int depth, String line) {
+			pending.subList(depth, pending.size()).clear();
+			written = Math.min(written, depth);
+			pending.add(line);
+		}
 
-			comments.add(comment);
+		public void visitClass(String name) {
+			enter(0, "c\t" + name);
 		}
 
-		writeMappings(out, comments);
-	}
+		public void visitMethod(String name, String desc) {
+			enter(1, "m\t" + desc + '\t' + name);
+		}
 
-	private static void writeMappings(BufferedWriter out, Collection<FullClassComments> allComments) throws IOException {
-		out.write("tiny\t2\t0\tnamed");
-		out.newLine();
+		public void visitField(String name, String desc) {
+			enter(1, "f\t" + desc + '\t' + name);
+		}
 
-		for (FullClassComments fullComments : allComments) {
-			out.write("c\t");
-			out.write(fullComments.className);
-			out.newLine();
+		public void visitParameter(int index, String name) {
+			enter(2, "p\t" + index + '\t' + Strings.nullToEmpty(name));
+		}
 
-			for (Class comment : fullComments.classComments) {
-				assert fullComments.className.equals(comment.getClassName());
+		public void visitComment(int depth, String comment) {
+			assert pending.size() > depth;
+			pending.subList(depth + 1, pending.size()).clear();
+			written = Math.min(written, depth + 1);
 
-				for (String line : comment.getComments()) {//Slightly dubious whether repeated comments is supported or not
-					out.write("\tc\t");
-					writeEscaped(out, line);
+			try {
+				for (; written < pending.size(); written++) {
+					indent(written);
+					out.write(pending.get(written));
 					out.newLine();
 				}
-			}
 
-			for (Method comment : fullComments.methodComments) {
-				out.write("\tm\t");
-				out.write(comment.getMethod().getDesc());
-				out.write('\t');
-				out.write(comment.getMethod().getName());
+				indent(depth + 1);
+				out.write("c\t");
+				writeEscaped(out, comment);
 				out.newLine();
-
-				for (String line : comment.getComments()) {
-					out.write("\t\tc\t");
-					writeEscaped(out, line);
-					out.newLine();
-				}
-
-				List<Parameter> params = fullComments.parameterComments.remove(comment.getMethod());
-				if (params != null) {
-					for (Parameter param : params) {
-						assert comment.getMethod().equals(param.getParameter().getMethod());
-
-						out.write("\t\tp\t");
-						out.write(Integer.toString(param.getParameter().getLocalVariableIndex()));
-						out.write('\t');
-						out.write(param.getParameter().getName());
-						out.newLine();
-
-						for (String line : param.getComments()) {
-							out.write("\t\t\tc\t");
-							writeEscaped(out, line);
-							out.newLine();
-						}
-					}
-				}
-
-				List<LocalVariableComment> locals = fullComments.localVariableComments.remove(comment.getMethod());
-				if (locals != null) {
-					for (LocalVariableComment local : locals) {
-						assert comment.getMethod().equals(local.getLocalVariable().getMethod());
-
-						out.write("\t\tv\t");
-						out.write(Integer.toString(local.getLocalVariable().getLocalVariableIndex()));
-						out.write('\t');
-						out.write(Integer.toString(local.getLocalVariable().getLocalVariableStartOffset()));
-						out.write('\t');
-						out.write(Integer.toString(local.getLocalVariable().getLocalVariableTableIndex()));
-						out.write('\t');
-						out.write(local.getLocalVariable().getName());
-						out.newLine();
-
-						for (String line : local.getComments()) {
-							out.write("\t\t\tc\t");
-							writeEscaped(out, line);
-							out.newLine();
-						}
-					}
-				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error writing comment for " + pending.get(depth), e);
 			}
+		}
 
-			for (Entry<EntryTriple, List<Parameter>> entry : fullComments.parameterComments.entrySet()) {
-				out.write("\tm\t");
-				out.write(entry.getKey().getDesc());
+		private void indent(int depth) throws IOException {
+			for (int i = 0; i < depth; i++) {
 				out.write('\t');
-				out.write(entry.getKey().getName());
-				out.newLine();
-
-				for (Parameter param : entry.getValue()) {
-					assert entry.getKey().equals(param.getParameter().getMethod());
+			}
+		}
+	}
 
-					out.write("\t\tp\t");
-					out.write(Integer.toString(param.getParameter().getLocalVariableIndex()));
-					out.write('\t');
-					out.write(param.getParameter().getName());
-					out.newLine();
+	public static void writeComments(BufferedWriter out, MappingBlob mappings) throws IOException {
+		CommentWriter writer = new CommentWriter(out);
 
-					for (String line : param.getComments()) {
-						out.write("\t\t\tc\t");
-						writeEscaped(out, line);
-						out.newLine();
-					}
-				}
+		DescriptorRemapper remapper = new DescriptorRemapper(className -> {
+			String triedMapping = mappings.tryMapName(className);
+			return triedMapping != null ? triedMapping : className;
+		});
 
-				List<LocalVariableComment> locals = fullComments.localVariableComments.remove(entry.getKey());
-				if (locals != null) {
-					for (LocalVariableComment local : locals) {
-						assert entry.getKey().equals(local.getLocalVariable().getMethod());
-
-						out.write("\t\tv\t");
-						out.write(Integer.toString(local.getLocalVariable().getLocalVariableIndex()));
-						out.write('\t');
-						out.write(Integer.toString(local.getLocalVariable().getLocalVariableStartOffset()));
-						out.write('\t');
-						out.write(Integer.toString(local.getLocalVariable().getLocalVariableTableIndex()));
-						out.write('\t');
-						out.write(local.getLocalVariable().getName());
-						out.newLine();
+		try {
+			for (Mapping mapping : mappings) {
+				if (!mapping.hasAnyComments()) continue; //Nothing to write
 
-						for (String line : local.getComments()) {
-							out.write("\t\t\tc\t");
-							writeEscaped(out, line);
-							out.newLine();
-						}
-					}
-				}
-			}
+				writer.visitClass(mapping.toOr(mapping.from));
+				if (mapping.hasComment()) writer.visitComment(0, mapping.comment);
 
-			for (Entry<EntryTriple, List<LocalVariableComment>> entry : fullComments.localVariableComments.entrySet()) {
-				out.write("\tm\t");
-				out.write(entry.getKey().getDesc());
-				out.write('\t');
-				out.write(entry.getKey().getName());
-				out.newLine();
+				for (Mapping.Method method : mapping.methods()) {
+					if (!method.hasAnyComments()) continue;
 
-				for (LocalVariableComment local : entry.getValue()) {
-					assert entry.getKey().equals(local.getLocalVariable().getMethod());
-
-					out.write("\t\tv\t");
-					out.write(Integer.toString(local.getLocalVariable().getLocalVariableIndex()));
-					out.write('\t');
-					out.write(Integer.toString(local.getLocalVariable().getLocalVariableStartOffset()));
-					out.write('\t');
-					out.write(Integer.toString(local.getLocalVariable().getLocalVariableTableIndex()));
-					out.write('\t');
-					out.write(local.getLocalVariable().getName());
-					out.newLine();
+					writer.visitMethod(method.nameOr(method.fromName), method.desc(remapper));
+					if (method.hasComment()) writer.visitComment(1, method.comment);
 
-					for (String line : local.getComments()) {
-						out.write("\t\t\tc\t");
-						writeEscaped(out, line);
-						out.newLine();
-					}
+					method.iterateArgComments((argComment, index) -> {
+						writer.visitParameter(index, method.arg(index));
+						writer.visitComment(2, argComment);
+					});
 				}
-			}
 
-			for (Field comment : fullComments.fieldComments) {
-				out.write("\tf\t");
-				out.write(comment.getField().getDesc());
-				out.write('\t');
-				out.write(comment.getField().getName());
-				out.newLine();
+				for (Mapping.Field field : mapping.fields()) {
+					if (!field.hasComment()) continue;
 
-				for (String line : comment.getComments()) {
-					out.write("\t\tc\t");
-					writeEscaped(out, line);
-					out.newLine();
+					writer.visitField(field.nameOr(field.fromName), field.desc(remapper));
+					writer.visitComment(1, field.comment);
 				}
 			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
 	}
 
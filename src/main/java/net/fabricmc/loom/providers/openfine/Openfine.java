@@ -9,22 +9,28 @@ package net.fabricmc.loom.providers.openfine;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
@@ -37,33 +43,33 @@ import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.logging.Logger;
 
 import org.objectweb.asm.AnnotationVisitor;
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
-import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
-
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
-import com.google.common.collect.Streams;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
 
 import net.fabricmc.loom.providers.JarNameFactory;
 import net.fabricmc.loom.providers.JarNamingStrategy;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MappingsProvider.MappingFactory;
+import net.fabricmc.loom.providers.mappings.MappingIndex;
+import net.fabricmc.loom.util.JarPostProcessor.ClassTransformer;
+import net.fabricmc.loom.util.OrderedTasks;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
 import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
 import net.fabricmc.stitch.util.StitchUtil;
 import net.fabricmc.stitch.util.StitchUtil.FileSystemDelegate;
 import net.fabricmc.tinyremapper.IMappingProvider;
-import net.fabricmc.tinyremapper.MemberInstance;
 
 import com.chocohead.optisine.OptiFineRemoved;
 
@@ -90,7 +96,7 @@ public class Openfine {
 		JarNamingStrategy out = JarNamingStrategy.forVersion(mcVersion + '-' + optifine.version);
 
 		File merged = new File(optiCache, JarNameFactory.CLIENT.getJarName(out));
-		if (!merged.exists()) merge(logger, client, optifineJar, server, merged);
+		if (!merged.exists()) merge(logger, client, optifineJar, server, merged, optiCache.toPath().resolve("reconstructed"));
 
 		return out;
 	}
@@ -111,7 +117,7 @@ public class Openfine {
 		System.gc(); //The OptiFine installer leaks a ZipFile of the client jar, try to clean the reference back up
 	}
 
-	private static void merge(Logger logger, File client, File optifine, File server, File to) throws IOException {
+	private static void merge(Logger logger, File client, File optifine, File server, File to, Path reconstructionCache) throws IOException {
 		logger.info("Merging OptiFine into " + to);
 
 		Set<String> mcEntries, optifineEntries, intersection;
@@ -129,7 +135,6 @@ public class Openfine {
 
 		try (FileSystemDelegate mcFS = StitchUtil.getJarFileSystem(client, false);
 				FileSystemDelegate ofFS = StitchUtil.getJarFileSystem(optifine, false);
-				FileSystemDelegate serverFS = server.exists() ? StitchUtil.getJarFileSystem(server, false) : null;
 				FileSystemDelegate outputFS = StitchUtil.getJarFileSystem(to, true)) {
 			for (String entry : Sets.difference(mcEntries, optifineEntries)) {
 				copy(mcFS.get(), outputFS.get(), entry);
@@ -139,35 +144,21 @@ public class Openfine {
 				copy(ofFS.get(), outputFS.get(), entry);
 			}
 
-			for (String entry : intersection) {
-				if (entry.endsWith(".class")) {
-					Path pathRawIn = mcFS.get().getPath(entry);
-					Path pathPatchedIn = ofFS.get().getPath(entry);
-
-					Path pathOut = outputFS.get().getPath(entry);
-			        if (pathOut.getParent() != null) {
-			            Files.createDirectories(pathOut.getParent());
-			        }
-
-			        byte[] stitchFix;
-			        if (serverFS != null) {
-			        	Path pathStichFix = serverFS.get().getPath(entry);
-				        stitchFix = Files.isReadable(pathStichFix) ? Files.readAllBytes(pathStichFix) : null;
-			        } else {
-			        	stitchFix = null;
-			        }
-
-			        logger.info("Reconstructing " + entry);
-			        byte[] data = ClassReconstructor.reconstruct(logger, Files.readAllBytes(pathRawIn), Files.readAllBytes(pathPatchedIn), stitchFix);
-
-			        //BasicFileAttributes touchTime = Files.readAttributes(pathIn, BasicFileAttributes.class);
-			        Files.write(pathOut, data, StandardOpenOption.CREATE_NEW);
-			        //Files.getFileAttributeView(pathIn, BasicFileAttributeView.class).setTimes(touchTime.lastModifiedTime(), touchTime.lastAccessTime(), touchTime.creationTime());
-				} else if (entry.startsWith("META-INF/")) {
-					copy(mcFS.get(), outputFS.get(), entry);
-				} else {
-					copy(ofFS.get(), outputFS.get(), entry);
+			//Reconstruct the classes in parallel, writing them (and anything else) in order as they're done to keep the output stable
+			try (ZipFile mcJar = new ZipFile(client); ZipFile ofJar = new ZipFile(optifine); ZipFile serverJar = server.exists() ? new ZipFile(server) : null;
+					OrderedTasks<Entry<String, byte[]>> tasks = new OrderedTasks<>(merged -> writeMerged(mcFS.get(), ofFS.get(), outputFS.get(), merged))) {
+				for (String entry : intersection) {
+					tasks.submit(() -> {
+						if (!entry.endsWith(".class")) return new SimpleImmutableEntry<>(entry, null);
+
+						byte[] stitchFix = serverJar != null ? read(serverJar, entry) : null;
+						return new SimpleImmutableEntry<>(entry, reconstruct(logger, reconstructionCache, entry, read(mcJar, entry), read(ofJar, entry), stitchFix));
+					});
 				}
+
+				tasks.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
 			}
 		} catch (IllegalStateException e) {
 			//If an ISE is thrown something has clearly gone wrong with the merging of the jars, thus we don't want to keep the corrupted output
@@ -176,6 +167,77 @@ public class Openfine {
 		}
 	}
 
+	/** Reconstruct the given class, reusing the result from the given cache if the exact same inputs have been reconstructed before */
+	private static byte[] reconstruct(Logger logger, Path cache, String name, byte[] original, byte[] patched, byte[] server) {
+		Hasher hasher = Hashing.sha256().newHasher().putString(VERSION, StandardCharsets.UTF_8);
+		for (byte[] data : new byte[][] {original, patched, server}) {
+			if (data != null) {
+				hasher.putInt(data.length).putBytes(data);
+			} else {
+				hasher.putInt(-1);
+			}
+		}
+		String key = hasher.hash().toString();
+		Path cached = cache.resolve(key.substring(0, 2)).resolve(key.substring(2) + ".class");
+
+		if (Files.exists(cached)) {
+			try {
+				return Files.readAllBytes(cached);
+			} catch (IOException e) {
+				logger.warn("Unable to read cached reconstruction of " + name + ", redoing it", e);
+			}
+		}
+
+		logger.info("Reconstructing " + name);
+		byte[] data = ClassReconstructor.reconstruct(logger, original, patched, server);
+
+		try {
+			Files.createDirectories(cached.getParent());
+			Path temp = Files.createTempFile(cached.getParent(), key, ".tmp");
+
+			try {
+				Files.write(temp, data);
+				Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to cache reconstruction of " + name, e);
+		}
+
+		return data;
+	}
+
+	private static byte[] read(ZipFile jar, String name) {
+		ZipEntry entry = jar.getEntry(name);
+		if (entry == null) return null;
+
+		try (InputStream in = jar.getInputStream(entry)) {
+			return ByteStreams.toByteArray(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + name + " from " + jar.getName(), e);
+		}
+	}
+
+	private static void writeMerged(FileSystem mcFS, FileSystem ofFS, FileSystem outputFS, Entry<String, byte[]> merged) throws IOException {
+		String entry = merged.getKey();
+
+		if (merged.getValue() != null) {
+			byte[] data = merged.getValue();
+
+			Path pathOut = outputFS.getPath(entry);
+			if (pathOut.getParent() != null) {
+				Files.createDirectories(pathOut.getParent());
+			}
+
+			Files.write(pathOut, data, StandardOpenOption.CREATE_NEW);
+		} else if (entry.startsWith("META-INF/")) {
+			copy(mcFS, outputFS, entry);
+		} else {
+			copy(ofFS, outputFS, entry);
+		}
+	}
+
 	private static void copy(FileSystem fsIn, FileSystem fsOut, String entry) throws IOException {
 		Path pathIn = fsIn.getPath(entry);
 
@@ -247,144 +309,144 @@ public class Openfine {
 		};
 	}
 
-	public static void transformRemovals(Logger logger, MappingsProvider mappingsProvider, File namedJar) throws IOException {
-		Map<String, String> notchToNamed = new HashMap<>();
-		mappingsProvider.mcRemappingFactory.create("official", "named").load(notchToNamed, notchToNamed, notchToNamed);
-
-		Map<String, String> namedToNotch = new HashMap<>();
-		mappingsProvider.mcRemappingFactory.create("named", "official").load(namedToNotch, new EmptyMap<>(), new EmptyMap<>());
-
-		ZipEntryTransformerEntry[] transforms;
-		try (ZipFile jar = new ZipFile(namedJar)) {
-			transforms = Streams.stream(Iterators.forEnumeration(jar.entries())).map(ZipEntry::getName).filter(name -> name.endsWith(".class")).distinct().map(className -> {
-				return new ZipEntryTransformerEntry(className, new ByteArrayZipEntryTransformer() {
-					private ClassVisitor makeVisitor(ClassVisitor parent) {
-						return new ClassVisitor(Opcodes.ASM7, parent) {
-							private final String removedDescriptor = Type.getDescriptor(OptiFineRemoved.class);
-							private String className;
-
-							@Override
-							public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-								super.visit(version, access, className = name, signature, superName, interfaces);
-							}
-
-							private AnnotationVisitor makeVisitor(String descriptor, AnnotationVisitor parent) {
-								if (removedDescriptor.equals(descriptor)) {
-									return new AnnotationVisitor(Opcodes.ASM7, parent) {
-										private OptiFineRemoved.Type removalType;
-
-										@Override
-										public void visitEnum(String name, String descriptor, String value) {
-											if ("type".equals(name)) {
-												assert Type.getDescriptor(OptiFineRemoved.Type.class).equals(descriptor);
-												removalType = OptiFineRemoved.Type.valueOf(value);
-												logger.debug("Passing removal of " + removalType + " in " + className);
-											}
-
-											super.visitEnum(name, descriptor, value);
-										}
+	/** Make a transformer which remaps the names in the removal annotations OptiFine's classes have to named as the named jar is written */
+	public static ClassTransformer makeRemovalTransformer(Logger logger, MappingsProvider mappingsProvider) throws IOException {
+		Mappings namedMappings = mappingsProvider.getMappings();
+		MappingIndex mappings = MappingIndex.of(namedMappings);
+		UnaryOperator<String> notchToNamed = name -> {
+			String named = mappings.mapClass("official", "named", name);
+			return named != null ? named : name;
+		};
+		String removedDescriptor = Type.getDescriptor(OptiFineRemoved.class);
+		byte[] removedMarker = removedDescriptor.getBytes(StandardCharsets.UTF_8);
 
-										private Type remapType(Type type) {
-											switch (type.getSort()) {
-											case Type.ARRAY:
-												return Type.getObjectType(Strings.repeat("[", type.getDimensions()).concat(remapType(type.getElementType()).getDescriptor()));
+		return new ClassTransformer() {
+			@SuppressWarnings("unused") //The index only holds the mappings weakly
+			private final Mappings heldMappings = namedMappings;
 
-											case Type.OBJECT:
-												return Type.getObjectType(notchToNamed.getOrDefault(type.getInternalName(), type.getInternalName()));
+			@Override
+			public boolean appliesTo(String className) {
+				return true; //Any class could have had something removed
+			}
 
-											default:
-												return type;
-											}
-										}
+			@Override
+			public boolean appliesTo(String className, byte[] contents) {
+				//Only classes with the annotation's descriptor in their constant pool can be using it
+				return Bytes.indexOf(contents, removedMarker) >= 0;
+			}
 
-										private String memberReplace(String member, boolean method) {
-											int split = member.lastIndexOf(method ? '(' : '#');
-											String name = member.substring(0, split);
-											String desc = member.substring(method ? split : split + 1);
-
-											String clazz = namedToNotch.get(className);
-											if (clazz != null) {
-												String remap = clazz + '/' + (method ? MemberInstance.getMethodId(name, desc) : MemberInstance.getFieldId(name, desc, false));
-												name = notchToNamed.getOrDefault(remap, name);
-											} else {
-												logger.warn("Unable to find backwards mapping for ".concat(className));
-											}
-
-											Type descType = Type.getType(desc);
-											if (method) {
-												desc = Arrays.stream(descType.getArgumentTypes()).map(this::remapType).map(Type::getClassName).collect(Collectors.joining(", "));
-												return remapType(descType.getReturnType()).getClassName() + ' ' + name + '(' + desc + ')';
-											} else {
-												desc = remapType(descType).getClassName();
-												return desc + ' ' + name;
-											}
-										}
+			@Override
+			public ClassVisitor transform(String name, ClassVisitor next) {
+				logger.debug("Rebuilding " + name);
 
-										@Override
-										public void visit(String name, Object value) {
-											if ("name".equals(name)) {
-												if (removalType == null) {
-													throw new IllegalStateException("Found annotation methods in unexpected order in ".concat(className));
-												}
-
-												switch (removalType) {
-												case INTERFACE:
-													value = notchToNamed.getOrDefault(value, (String) value);
-													break;
-
-												case METHOD: {
-													value = memberReplace((String) value, true);
-													break;
-												}
-
-												case FIELD:
-													value = memberReplace((String) value, false);
-													break;
-												}
-											}
-
-											super.visit(name, value);
-										}
-									};
-								} else {
-									return new AnnotationVisitor(Opcodes.ASM7, parent) {
-										@Override
-										public AnnotationVisitor visitAnnotation(String name, String descriptor) {
-											return makeVisitor(descriptor, super.visitAnnotation(name, descriptor));
+				return new ClassVisitor(Opcodes.ASM7, next) {
+					private String className, officialName;
+
+					@Override
+					public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+						super.visit(version, access, className = name, signature, superName, interfaces);
+						officialName = mappings.mapClass("named", "official", name); //Only needed for members, but there's no sense looking it up for each one
+					}
+
+					private AnnotationVisitor makeVisitor(String descriptor, AnnotationVisitor parent) {
+						if (removedDescriptor.equals(descriptor)) {
+							return new AnnotationVisitor(Opcodes.ASM7, parent) {
+								private OptiFineRemoved.Type removalType;
+
+								@Override
+								public void visitEnum(String name, String descriptor, String value) {
+									if ("type".equals(name)) {
+										assert Type.getDescriptor(OptiFineRemoved.Type.class).equals(descriptor);
+										removalType = OptiFineRemoved.Type.valueOf(value);
+										logger.debug("Passing removal of " + removalType + " in " + className);
+									}
+
+									super.visitEnum(name, descriptor, value);
+								}
+
+								private Type remapType(Type type) {
+									switch (type.getSort()) {
+									case Type.ARRAY:
+										return Type.getObjectType(Strings.repeat("[", type.getDimensions()).concat(remapType(type.getElementType()).getDescriptor()));
+
+									case Type.OBJECT:
+										return Type.getObjectType(notchToNamed.apply(type.getInternalName()));
+
+									default:
+										return type;
+									}
+								}
+
+								private String memberReplace(String member, boolean method) {
+									int split = member.lastIndexOf(method ? '(' : '#');
+									String name = member.substring(0, split);
+									String desc = member.substring(method ? split : split + 1);
+
+									if (officialName != null) {
+										EntryTriple entry = new EntryTriple(officialName, name, desc);
+										EntryTriple remap = method ? mappings.mapMethod("official", "named", entry) : mappings.mapField("official", "named", entry);
+										if (remap != null) name = remap.getName();
+									} else {
+										logger.warn("Unable to find backwards mapping for ".concat(className));
+									}
+
+									Type descType = Type.getType(desc);
+									if (method) {
+										desc = Arrays.stream(descType.getArgumentTypes()).map(this::remapType).map(Type::getClassName).collect(Collectors.joining(", "));
+										return remapType(descType.getReturnType()).getClassName() + ' ' + name + '(' + desc + ')';
+									} else {
+										desc = remapType(descType).getClassName();
+										return desc + ' ' + name;
+									}
+								}
+
+								@Override
+								public void visit(String name, Object value) {
+									if ("name".equals(name)) {
+										if (removalType == null) {
+											throw new IllegalStateException("Found annotation methods in unexpected order in ".concat(className));
 										}
 
-										@Override
-										public AnnotationVisitor visitArray(String name) {
-											return makeVisitor(null, super.visitArray(name));
+										switch (removalType) {
+										case INTERFACE:
+											value = notchToNamed.apply((String) value);
+											break;
+
+										case METHOD: {
+											value = memberReplace((String) value, true);
+											break;
 										}
-									};
-								}
-							}
 
-							@Override
-							public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-								return makeVisitor(descriptor, super.visitAnnotation(descriptor, visible));
-							}
-						};
-					}
+										case FIELD:
+											value = memberReplace((String) value, false);
+											break;
+										}
+									}
 
-					@Override
-					protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
-						logger.debug("Rebuilding " + className.substring(0, className.length() - 6));
+									super.visit(name, value);
+								}
+							};
+						} else {
+							return new AnnotationVisitor(Opcodes.ASM7, parent) {
+								@Override
+								public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+									return makeVisitor(descriptor, super.visitAnnotation(name, descriptor));
+								}
 
-						ClassWriter classWriter = new ClassWriter(0);
-						new ClassReader(input).accept(makeVisitor(classWriter), 0);
-						return classWriter.toByteArray();
+								@Override
+								public AnnotationVisitor visitArray(String name) {
+									return makeVisitor(null, super.visitArray(name));
+								}
+							};
+						}
 					}
 
 					@Override
-					protected boolean preserveTimestamps() {
-						return true; //Why not?
+					public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+						return makeVisitor(descriptor, super.visitAnnotation(descriptor, visible));
 					}
-				});
-			}).toArray(ZipEntryTransformerEntry[]::new);
-		}
-
-		ZipUtil.transformEntries(namedJar, transforms);
+				};
+			}
+		};
 	}
-}
\ No newline at end of file
+}
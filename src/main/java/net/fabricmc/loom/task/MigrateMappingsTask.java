@@ -31,10 +31,7 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -54,6 +51,7 @@ import org.gradle.api.tasks.options.Option;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
+import net.fabricmc.loom.providers.mappings.MappingIndex;
 import net.fabricmc.loom.util.SourceRemapper;
 import net.fabricmc.mappings.ClassEntry;
 import net.fabricmc.mappings.EntryTriple;
@@ -201,27 +199,28 @@ public class MigrateMappingsTask extends AbstractLoomTask {
 
 		@Override
 		public MappingSet read(MappingSet mappings) {
-			Map<String, ClassEntry> targetClasses = targetMappings.getClassEntries().stream().collect(Collectors.toMap(mapping -> mapping.get(fromNamespace), Function.identity()));
-			Map<EntryTriple, FieldEntry> targetFields = targetMappings.getFieldEntries().stream().collect(Collectors.toMap(mapping -> mapping.get(fromNamespace), Function.identity()));
-			Map<EntryTriple, MethodEntry> targetMethods = targetMappings.getMethodEntries().stream().collect(Collectors.toMap(mapping -> mapping.get(fromNamespace), Function.identity()));
+			MappingIndex target = MappingIndex.standalone(targetMappings);
 
 			for (ClassEntry entry : sourceMappings.getClassEntries()) {
 				String from = entry.get(toNamespace);
-				String to = targetClasses.getOrDefault(entry.get(fromNamespace), entry).get(toNamespace);
+				ClassEntry targetEntry = target.findClass(fromNamespace, entry.get(fromNamespace));
+				String to = (targetEntry != null ? targetEntry : entry).get(toNamespace);
 
 				mappings.getOrCreateClassMapping(from).setDeobfuscatedName(to);
 			}
 
 			for (FieldEntry entry : sourceMappings.getFieldEntries()) {
 				EntryTriple fromEntry = entry.get(toNamespace);
-				EntryTriple toEntry = targetFields.getOrDefault(entry.get(fromNamespace), entry).get(toNamespace);
+				FieldEntry targetEntry = target.findField(fromNamespace, entry.get(fromNamespace));
+				EntryTriple toEntry = (targetEntry != null ? targetEntry : entry).get(toNamespace);
 
 				mappings.getOrCreateClassMapping(fromEntry.getOwner()).getOrCreateFieldMapping(fromEntry.getName(), fromEntry.getDesc()).setDeobfuscatedName(toEntry.getName());
 			}
 
 			for (MethodEntry entry : sourceMappings.getMethodEntries()) {
 				EntryTriple fromEntry = entry.get(toNamespace);
-				EntryTriple toEntry = targetMethods.getOrDefault(entry.get(fromNamespace), entry).get(toNamespace);
+				MethodEntry targetEntry = target.findMethod(fromNamespace, entry.get(fromNamespace));
+				EntryTriple toEntry = (targetEntry != null ? targetEntry : entry).get(toNamespace);
 
 				mappings.getOrCreateClassMapping(fromEntry.getOwner()).getOrCreateMethodMapping(fromEntry.getName(), fromEntry.getDesc()).setDeobfuscatedName(toEntry.getName());
 			}
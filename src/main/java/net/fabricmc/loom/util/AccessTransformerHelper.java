@@ -39,6 +39,7 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -52,15 +53,12 @@ import org.gradle.api.Task;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.tasks.AbstractCopyTask;
 
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.Remapper;
 
 import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
 import org.zeroturnaround.zip.transform.StringZipEntryTransformer;
 import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
 
@@ -69,6 +67,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.JarPostProcessor.ClassTransformer;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
@@ -343,7 +342,7 @@ public class AccessTransformerHelper {
 		}
 	}
 
-	private static class ZipAT extends ByteArrayZipEntryTransformer {
+	private static class ClassAT {
 		/** The class name of the type we're aiming to transform */
 		public final String className;
 		/** A set of all methods we're aiming to transform in {@link #className} */
@@ -352,14 +351,14 @@ public class AccessTransformerHelper {
 		private final boolean selfAT;
 		/** A set of all inner classes that need to be transformed */
 		private final Set<String> innerTransforms = new HashSet<>();
-		/** Whether we have been used (ie {@link #transform(ZipEntry, byte[])} has been called) */
-		boolean hasTransformed = false;
+		/** Whether we have been used (ie {@link #makeVisitor(ClassVisitor)} has been called) */
+		volatile boolean hasTransformed = false;
 
-		ZipAT(Entry<String, Set<String>> entry, String wildcard) {
+		ClassAT(Entry<String, Set<String>> entry, String wildcard) {
 			this(entry.getKey(), entry.getValue(), wildcard);
 		}
 
-		ZipAT(String className, Set<String> transforms, String wildcard) {
+		ClassAT(String className, Set<String> transforms, String wildcard) {
 			this.className = className;
 			this.transforms = transforms;
 
@@ -377,21 +376,12 @@ public class AccessTransformerHelper {
 			innerTransforms.addAll(name);
 		}
 
-		@Override
-		protected boolean preserveTimestamps() {
-			return true;
-		}
-
-		@Override
-		protected byte[] transform(ZipEntry zipEntry, byte[] data) throws IOException {
+		ClassVisitor makeVisitor(ClassVisitor next) {
 			if (hasTransformed) throw new IllegalStateException("Transformer for " + className + " was attempted to be reused");
 			hasTransformed = true; //We only expect to be run once (although aren't technically limited to prevent it)
 
-			ClassReader reader = new ClassReader(data);
-			ClassWriter writer = new ClassWriter(reader, 0);
-
 			Set<String> expectedTransforms = new HashSet<>(transforms);
-			reader.accept(new ClassVisitor(Opcodes.ASM7, writer) {
+			return new ClassVisitor(Opcodes.ASM7, next) {
 				private int flipBits(int access, int to) {
 					access &= ~(Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED | Opcodes.ACC_PRIVATE);
 					access |= to;
@@ -424,61 +414,75 @@ public class AccessTransformerHelper {
 						return super.visitMethod(access, name, descriptor, signature, exceptions);
 					}
 				}
-			}, 0);
-			if (!expectedTransforms.isEmpty()) {//There's still more we never found, not so good that
-				throw new IllegalStateException("Ran through class " + className + " but couldn't find " + expectedTransforms);
-			}
 
-			return writer.toByteArray();
-		}
-	}
+				@Override
+				public void visitEnd() {
+					if (!expectedTransforms.isEmpty()) {//There's still more we never found, not so good that
+						throw new IllegalStateException("Ran through class " + className + " but couldn't find " + expectedTransforms);
+					}
 
-	public static class ZipEntryAT extends ZipEntryTransformerEntry {
-		public ZipEntryAT(ZipAT transformer) {
-			super(transformer.className + ".class", transformer);
+					super.visitEnd();
+				}
+			};
 		}
+	}
 
-		/** Whether the transformer for this entry has been applied */
-		public boolean didTransform() {
-			return ((ZipAT) getTransformer()).hasTransformed;
-		}
+	private static String rootClass(String className) {
+		int split = className.indexOf('$');
+		return split > 0 ? className.substring(0, split) : className;
 	}
 
-	public static ZipEntryAT[] makeZipATs(Set<String> classPool, Map<String, Set<String>> transforms, String wildcard) {
-		Map<String, ZipAT> transformers = transforms.entrySet().stream().collect(Collectors.toMap(Entry::getKey, entry -> new ZipAT(entry, wildcard)));
+	/** Make a transformer which applies the given access transformations to a jar as it is written, checking every class was found once finished */
+	public static ClassTransformer makeATs(Set<String> classPool, Map<String, Set<String>> transforms, String wildcard) {
+		Map<String, ClassAT> transformers = transforms.entrySet().stream().collect(Collectors.toMap(Entry::getKey, entry -> new ClassAT(entry, wildcard)));
 
 		Set<String> classChanges = transformers.entrySet().stream().filter(entry -> entry.getValue().changesOwnAccess()).map(Entry::getKey).collect(Collectors.toSet());
 		if (!classChanges.isEmpty()) {
 			Map<String, Set<String>> rootClasses = new HashMap<>();
 
 			for (String className : classChanges) {
-				int split = className.indexOf('$');
-				if (split > 0) {
+				String rootClass = rootClass(className);
+				if (!rootClass.equals(className)) {
 					//If an access change happens to an inner class we'll have to muck about with inner attributes
-					rootClasses.computeIfAbsent(className.substring(0, split), k -> new HashSet<>()).add(className);
+					rootClasses.computeIfAbsent(rootClass, k -> new HashSet<>()).add(className);
 				}
 			}
 
 			if (!rootClasses.isEmpty()) {
-				for (Entry<String, Set<String>> rootEntry : rootClasses.entrySet()) {
-					String rootClass = rootEntry.getKey();
+				//Group the nested classes by their root in a single pass, rather than searching the whole pool for each root
+				Map<String, List<String>> nestedClasses = classPool.stream().filter(name -> rootClasses.containsKey(rootClass(name))).collect(Collectors.groupingBy(AccessTransformerHelper::rootClass));
 
+				for (Entry<String, Set<String>> rootEntry : rootClasses.entrySet()) {
 					//Find "all" nested classes to update the access flags
-					for (String pool : classPool) {
-						if (pool.startsWith(rootClass)) {
-							if (transformers.containsKey(pool)) {
-								transformers.get(pool).addInnerTransform(rootEntry.getValue());
-							} else {
-								ZipAT transformer = new ZipAT(pool, Collections.emptySet(), null);
-								transformers.put(pool, transformer);
-								transformer.addInnerTransform(rootEntry.getValue());
-							}
+					for (String pool : nestedClasses.getOrDefault(rootEntry.getKey(), Collections.emptyList())) {
+						if (transformers.containsKey(pool)) {
+							transformers.get(pool).addInnerTransform(rootEntry.getValue());
+						} else {
+							ClassAT transformer = new ClassAT(pool, Collections.emptySet(), null);
+							transformers.put(pool, transformer);
+							transformer.addInnerTransform(rootEntry.getValue());
 						}
 					}
 				}
 			}
 		}
 
-		return transformers.values().stream().map(ZipEntryAT::new).toArray(ZipEntryAT[]::new);
+		return new ClassTransformer() {
+			@Override
+			public boolean appliesTo(String className) {
+				return transformers.containsKey(className);
+			}
+
+			@Override
+			public ClassVisitor transform(String className, ClassVisitor next) {
+				return transformers.get(className).makeVisitor(next);
+			}
+
+			@Override
+			public void finish() {
+				List<String> missed = transformers.values().stream().filter(transformer -> !transformer.hasTransformed).map(transformer -> transformer.className).collect(Collectors.toList());
+				if (!missed.isEmpty()) throw new IllegalStateException("Finished transforming but missed " + missed);
+			}
+		};
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+import org.zeroturnaround.zip.ZipUtil;
+import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
+import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
+
+import net.fabricmc.tinyremapper.OutputConsumerPath;
+
+/**
+ * A chain of changes to make to a jar as Tiny Remapper writes it, rather than rewriting the whole jar again afterwards for each of them.
+ *
+ * <p>Each class is read and written at most once, with every {@link ClassTransformer} which wants it visiting it in the order they were added.
+ * Classes which no transformer wants are written exactly as they come.
+ */
+public class JarPostProcessor {
+	public interface ClassTransformer {
+		/** Whether the given class needs to be visited by {@link #transform(String, ClassVisitor)} */
+		boolean appliesTo(String className);
+
+		/** Whether the given class needs to be visited given its contents too, only asked if {@link #appliesTo(String)} is true */
+		default boolean appliesTo(String className, byte[] contents) {
+			return true;
+		}
+
+		/** Make a visitor to transform the given class, passing the result on to the given visitor */
+		ClassVisitor transform(String className, ClassVisitor next);
+
+		/** Called once every class has been written, to check nothing which was expected was missed */
+		default void finish() {
+		}
+	}
+
+	private final List<ClassTransformer> transformers = new ArrayList<>();
+	private final Map<String, byte[]> resources = new LinkedHashMap<>();
+
+	public JarPostProcessor withTransformer(ClassTransformer transformer) {
+		transformers.add(transformer);
+		return this;
+	}
+
+	/** Add the given file to the jar if it isn't already present */
+	public JarPostProcessor withResource(String name, byte[] contents) {
+		resources.put(name, contents);
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return transformers.isEmpty() && resources.isEmpty();
+	}
+
+	/** Wrap the given output such that every class passes through the transformers before being written */
+	public BiConsumer<String, byte[]> wrap(BiConsumer<String, byte[]> output) {
+		if (transformers.isEmpty()) return output;
+
+		return (name, bytes) -> output.accept(name, transform(name, bytes));
+	}
+
+	byte[] transform(String className, byte[] bytes) {
+		List<ClassTransformer> applicable = new ArrayList<>(transformers.size());
+		for (ClassTransformer transformer : transformers) {
+			if (transformer.appliesTo(className) && transformer.appliesTo(className, bytes)) applicable.add(transformer);
+		}
+		if (applicable.isEmpty()) return bytes;
+
+		ClassReader reader = new ClassReader(bytes);
+		ClassWriter writer = new ClassWriter(reader, 0);
+
+		ClassVisitor visitor = writer;
+		for (int i = applicable.size() - 1; i >= 0; i--) {
+			visitor = applicable.get(i).transform(className, visitor);
+		}
+		reader.accept(visitor, 0);
+
+		return writer.toByteArray();
+	}
+
+	/** Add any resources the given input jar didn't already have to the output, then check every transformer was happy */
+	public void finish(Path input, OutputConsumerPath output) throws IOException {
+		if (!resources.isEmpty()) {
+			Map<String, byte[]> missing = new LinkedHashMap<>(resources);
+			try (ZipFile jar = new ZipFile(input.toFile())) {
+				missing.keySet().removeIf(name -> jar.getEntry(name) != null);
+			}
+
+			if (!missing.isEmpty()) {
+				Path temp = Files.createTempDirectory("fabric-loom");
+
+				try {
+					for (Entry<String, byte[]> entry : missing.entrySet()) {
+						Path file = temp.resolve(entry.getKey());
+						Files.createDirectories(file.getParent());
+						Files.write(file, entry.getValue());
+
+						output.addNonClassFile(file, entry.getKey());
+					}
+				} finally {
+					Files.walkFileTree(temp, new DeletingFileVisitor());
+				}
+			}
+		}
+
+		transformers.forEach(ClassTransformer::finish);
+	}
+
+	/** Copy the given jar to the given destination, applying the transformers and resources on the way */
+	public void copy(File input, File output) throws IOException {
+		List<ZipEntryTransformerEntry> entries = new ArrayList<>();
+
+		try (ZipFile jar = new ZipFile(input)) {
+			for (ZipEntry entry : Collections.list(jar.entries())) {
+				String name = entry.getName();
+				if (!name.endsWith(".class")) continue;
+
+				String className = name.substring(0, name.length() - 6);
+				if (transformers.stream().anyMatch(transformer -> transformer.appliesTo(className))) {
+					entries.add(new ZipEntryTransformerEntry(name, new ByteArrayZipEntryTransformer() {
+						@Override
+						protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
+							return JarPostProcessor.this.transform(className, input);
+						}
+
+						@Override
+						protected boolean preserveTimestamps() {
+							return true;
+						}
+					}));
+				}
+			}
+		}
+
+		ZipUtil.transformEntries(input, entries.toArray(new ZipEntryTransformerEntry[0]), output);
+		for (Entry<String, byte[]> entry : resources.entrySet()) {
+			if (!ZipUtil.containsEntry(output, entry.getKey())) ZipUtil.addEntry(output, entry.getKey(), entry.getValue());
+		}
+
+		transformers.forEach(ClassTransformer::finish);
+	}
+}
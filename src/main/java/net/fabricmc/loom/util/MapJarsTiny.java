@@ -24,31 +24,38 @@
 
 package net.fabricmc.loom.util;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
 
-import org.zeroturnaround.zip.ZipUtil;
-
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.JarNameFactory;
 import net.fabricmc.loom.providers.MappingsProvider;
@@ -56,7 +63,8 @@ import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.providers.MinecraftVersionAdaptable;
 import net.fabricmc.loom.providers.mappings.MappingBlob;
-import net.fabricmc.loom.util.AccessTransformerHelper.ZipEntryAT;
+import net.fabricmc.loom.providers.mappings.MappingIndex;
+import net.fabricmc.loom.providers.mappings.RemapIndex;
 import net.fabricmc.mappings.ClassEntry;
 import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.Mappings;
@@ -70,51 +78,228 @@ import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyUtils;
 
 public class MapJarsTiny {
-	public static void mapJars(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project) throws IOException {
+	/**
+	 * Make the Intermediary and named Minecraft jars, applying the given post processors to each as they are written
+	 *
+	 * @param interProcessor The changes to make to the Intermediary jar
+	 * @param namedProcessor The changes to make to the named jar, along with adding the version.json if it is wanted
+	 */
+	public static void mapJars(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project, JarPostProcessor interProcessor, JarPostProcessor namedProcessor) throws IOException {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		MappingsProvider mappingsProvider = extension.getMappingsProvider();
+		if (extension.shouldAddVersionIfNeeded()) namedProcessor.withResource("version.json", versionJSON(jarProvider.minecraftVersion));
 
 		Path[] classpath = mapProvider.getMapperPaths().stream().map(File::toPath).toArray(Path[]::new);
 
-		interJar: {
-			String fromM;
-			switch (jarProvider.getMergeStrategy()) {
-			case FIRST:
-				fromM = "official";
-				break;
+		String fromM;
+		switch (jarProvider.getMergeStrategy()) {
+		case FIRST:
+			fromM = "official";
+			break;
 
-			case CLIENT_ONLY:
-				fromM = "client";
-				break;
+		case CLIENT_ONLY:
+			fromM = "client";
+			break;
 
-			case SERVER_ONLY:
-				fromM = "server";
-				break;
+		case SERVER_ONLY:
+			fromM = "server";
+			break;
 
-			case LAST:
-				if (!mapProvider.getIntermediaryJar().exists()) {//It may already exist if the merged jar is purely in Intermediary names
+		case LAST:
+			if (!mapProvider.getIntermediaryJar().exists()) {//It may already exist if the merged jar is purely in Intermediary names
+				if (interProcessor.isEmpty()) {
 					Files.copy(jarProvider.getMergedJar(), mapProvider.getIntermediaryJar().toPath());
 				} else {
-					assert jarProvider.getMergedJar().toFile().equals(mapProvider.getIntermediaryJar());
+					interProcessor.copy(jarProvider.getMergedJar().toFile(), mapProvider.getIntermediaryJar());
 				}
-				break interJar;
-
-			case INDIFFERENT:
-			default:
-				throw new IllegalStateException("Unexpected jar merge strategy " + jarProvider.getMergeStrategy());
+			} else {
+				assert jarProvider.getMergedJar().toFile().equals(mapProvider.getIntermediaryJar());
+				assert interProcessor.isEmpty(); //Transforming the merged jar in place would be bad
 			}
+			fromM = null; //Already in Intermediary, so there's only the named jar to make
+			break;
+
+		case INDIFFERENT:
+		default:
+			throw new IllegalStateException("Unexpected jar merge strategy " + jarProvider.getMergeStrategy());
+		}
+
+		if (fromM != null) {
+			mapJars(project.getLogger(), extension, mappingsProvider, jarProvider.getMergedJar(), classpath, mapProvider.getIntermediaryJar(), mapProvider.getMappedJar(), fromM, interProcessor, namedProcessor);
+		} else {
+			mapJar(project.getLogger(), extension, mappingsProvider, mapProvider.getIntermediaryJar().toPath(), classpath, mapProvider.getMappedJar(), "intermediary", "named", namedProcessor);
+		}
+		CommandFixNesting.run(mapProvider.getMappedJar()); //Stitch only offers fixing a whole jar at once
+	}
+
+	/** A hash of everything besides the named mappings which changes how the named jar comes out */
+	private static long remapSettings(LoomGradleExtension extension, MappingsProvider mappingsProvider, MinecraftProvider jarProvider) throws IOException {
+		long settings = Boolean.hashCode(extension.shouldBulldozeMappings());
+
+		String fromM;
+		switch (jarProvider.getMergeStrategy()) {
+		case FIRST:
+			fromM = "official";
+			break;
+
+		case CLIENT_ONLY:
+			fromM = "client";
+			break;
+
+		case SERVER_ONLY:
+			fromM = "server";
+			break;
 
-			mapJar(project.getLogger(), extension, mappingsProvider, jarProvider.getMergedJar(), classpath, mapProvider.getIntermediaryJar(), fromM, "intermediary");
+		default: //Already in Intermediary, so there's nothing more to go wrong
+			return settings;
+		}
+
+		return settings * 31 + RemapIndex.hashMappings(mappingsProvider.mcRemappingFactory.create(fromM, "intermediary"));
+	}
+
+	/** Record the mappings each class in the newly mapped jar was made with, so the next change in mappings can be applied incrementally */
+	public static void indexMappedJar(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project, Path indexFile) throws IOException {
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		MappingsProvider mappingsProvider = extension.getMappingsProvider();
+
+		RemapIndex.create(mapProvider.getIntermediaryJar().toPath(), mappingsProvider.mcRemappingFactory.create("intermediary", "named"),
+				remapSettings(extension, mappingsProvider, jarProvider), mapProvider.getMappedJar().toPath()).write(indexFile);
+	}
+
+	/**
+	 * Make the mapped jar by only remapping the classes which would come out differently to how they did for the last mapped jar, copying the
+	 * rest across from it instead.
+	 *
+	 * @return Whether the mapped jar could be made this way, if not the whole jar needs remapping as normal
+	 */
+	public static boolean mapJarIncrementally(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project, Path indexFile) throws IOException {
+		Path interJar = mapProvider.getIntermediaryJar().toPath();
+		Path namedJar = mapProvider.getMappedJar().toPath();
+		if (Files.notExists(interJar)) return false;
+
+		RemapIndex previous = RemapIndex.read(indexFile);
+		if (previous == null || Files.notExists(previous.getNamedJar()) || previous.getNamedJar().equals(namedJar.toAbsolutePath())) return false;
+
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		MappingsProvider mappingsProvider = extension.getMappingsProvider();
+		IMappingProvider mappings = mappingsProvider.mcRemappingFactory.create("intermediary", "named");
+
+		RemapIndex index = RemapIndex.create(interJar, mappings, remapSettings(extension, mappingsProvider, jarProvider), namedJar);
+		Set<String> changed = index.findChanges(previous);
+		if (changed == null || changed.size() > index.getClasses().size() / 2) return false; //Not worth the effort
+
+		Map<String, String> classMap = new HashMap<>();
+		mappings.load(classMap, new HashMap<>(), new HashMap<>());
+		Set<String> unchanged = Sets.difference(index.getClasses(), changed);
+		if (!RemapIndex.hasAll(previous.getNamedJar(), unchanged, classMap)) return false;
+
+		project.getLogger().lifecycle(":Remapping " + changed.size() + " of " + index.getClasses().size() + " minecraft classes (TinyRemapper, intermediary -> named)");
+		Path changedJar = Files.createTempFile(interJar.getParent(), interJar.getFileName() + "-changed", ".tmp");
+		Path unchangedJar = null;
+		try {
+			unchangedJar = Files.createTempFile(interJar.getParent(), interJar.getFileName() + "-unchanged", ".tmp");
+			splitJar(interJar, changed, changedJar, unchangedJar);
+
+			JarPostProcessor processor = new JarPostProcessor();
+			if (extension.shouldAddVersionIfNeeded()) processor.withResource("version.json", versionJSON(jarProvider.minecraftVersion));
+
+			TinyRemapper remapper = makeRemapper(mappings, extension.shouldBulldozeMappings());
+			try (OutputConsumerPath outputConsumer = new OutputConsumerPath(namedJar); ZipFile previousJar = new ZipFile(previous.getNamedJar().toFile())) {
+				//The unchanged classes are still needed for the hierarchy, they just don't need remapping again
+				remapper.readClassPath(mapProvider.getMapperPaths().stream().map(File::toPath).toArray(Path[]::new));
+				remapper.readClassPath(unchangedJar);
+				remapper.readInputs(changedJar);
+				remapper.apply(outputConsumer);
+				outputConsumer.addNonClassFiles(changedJar, NonClassCopyMode.FIX_META_INF, remapper);
+				processor.finish(changedJar, outputConsumer);
+
+				for (String name : unchanged) {
+					String named = classMap.getOrDefault(name, name);
+
+					try (InputStream in = previousJar.getInputStream(previousJar.getEntry(named + ".class"))) {
+						outputConsumer.accept(named, ByteStreams.toByteArray(in));
+					}
+				}
+			} catch (Exception e) {
+				Files.deleteIfExists(namedJar);
+				throw new RuntimeException("Failed to remap JAR " + interJar + " with mappings from " + mappings, e);
+			} finally {
+				remapper.finish();
+			}
+		} finally {
+			Files.deleteIfExists(changedJar);
+			if (unchangedJar != null) Files.deleteIfExists(unchangedJar);
 		}
 
-		mapJar(project.getLogger(), extension, mappingsProvider, mapProvider.getIntermediaryJar().toPath(), classpath, mapProvider.getMappedJar(), "intermediary", "named");
 		CommandFixNesting.run(mapProvider.getMappedJar());
+		index.write(indexFile);
+		return true;
+	}
+
+	/** Split the classes in the given jar by whether they are in the given set, with anything which isn't a class going with those that are */
+	private static void splitJar(Path jar, Set<String> classes, Path inJar, Path outJar) throws IOException {
+		try (ZipFile in = new ZipFile(jar.toFile());
+				ZipOutputStream included = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(inJar)));
+				ZipOutputStream excluded = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(outJar)))) {
+			//Only temporary, so there's no sense in spending much time compressing them
+			included.setLevel(Deflater.BEST_SPEED);
+			excluded.setLevel(Deflater.BEST_SPEED);
+			boolean anyIncluded = false, anyExcluded = false;
+
+			for (ZipEntry entry : Collections.list(in.entries())) {
+				if (entry.isDirectory()) continue;
+
+				String name = entry.getName();
+				boolean include = !name.endsWith(".class") || classes.contains(name.substring(0, name.length() - 6));
+				ZipOutputStream out = include ? included : excluded;
+
+				out.putNextEntry(new ZipEntry(name));
+				try (InputStream data = in.getInputStream(entry)) {
+					ByteStreams.copy(data, out);
+				}
+				out.closeEntry();
+
+				if (include) {
+					anyIncluded = true;
+				} else {
+					anyExcluded = true;
+				}
+			}
 
-		if (extension.shouldAddVersionIfNeeded() && !ZipUtil.containsEntry(mapProvider.getMappedJar(), "version.json")) addVersionJSON(mapProvider.getMappedJar(), jarProvider.minecraftVersion);
+			//Zips have to have something in them
+			if (!anyIncluded) included.putNextEntry(new ZipEntry("META-INF/"));
+			if (!anyExcluded) excluded.putNextEntry(new ZipEntry("META-INF/"));
+		}
+	}
+
+	private static void mapJar(Logger logger, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path input, Path[] classpath, File output, String fromM, String toM, JarPostProcessor processor) throws IOException {
+		logger.lifecycle(":Remapping minecraft (TinyRemapper, " + fromM + " -> " + toM + ')');
+
+		IMappingProvider mappings = mappingsProvider.mcRemappingFactory.create(fromM, toM);
+		remapJar(makeRemapper(mappings, extension.shouldBulldozeMappings()), input, mappings, classpath, output.toPath(), processor);
 	}
 
-	private static void mapJar(Logger logger, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path input, Path[] classpath, File output, String fromM, String toM) throws IOException {
-		remapJar(logger, input, mappingsProvider.mcRemappingFactory.create(fromM, toM), extension.shouldBulldozeMappings(), classpath, output.toPath(), fromM, toM);
+	/** Map the given jar to Intermediary and then to named, with the named remapper reading the classpath whilst the Intermediary jar is being made */
+	private static void mapJars(Logger logger, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path input, Path[] classpath, File interJar, File namedJar, String fromM,
+									JarPostProcessor interProcessor, JarPostProcessor namedProcessor) throws IOException {
+		logger.lifecycle(":Remapping minecraft (TinyRemapper, " + fromM + " -> intermediary -> named)");
+
+		IMappingProvider interMappings = mappingsProvider.mcRemappingFactory.create(fromM, "intermediary");
+		IMappingProvider namedMappings = mappingsProvider.mcRemappingFactory.create("intermediary", "named");
+		TinyRemapper namedRemapper = makeRemapper(namedMappings, extension.shouldBulldozeMappings());
+
+		try {
+			CompletableFuture<?> namedClasspath = namedRemapper.readClassPathAsync(classpath);
+
+			remapJar(makeRemapper(interMappings, extension.shouldBulldozeMappings()), input, interMappings, classpath, interJar.toPath(), interProcessor);
+
+			namedClasspath.join();
+		} catch (Throwable t) {
+			namedRemapper.finish();
+			throw t;
+		}
+
+		remapJar(namedRemapper, interJar.toPath(), namedMappings, null, namedJar.toPath(), namedProcessor);
 	}
 
 	public static Path makeInterJar(Project project, LoomGradleExtension extension, MinecraftVersionAdaptable version, Optional<Path> intermediaryMappings) throws IOException {
@@ -169,21 +354,39 @@ public class MapJarsTiny {
 				bulldoze, libraries.stream().map(File::toPath).toArray(Path[]::new), remappedJar, originMappings, "intermediary");
 	}
 
+	/** Remap the given jar to Intermediary with already loaded mappings, allowing several jars to share them without each reading the file */
+	public static void remapJar(Logger logger, Path originJar, Mappings intermediaryMappings, boolean bulldoze, Set<File> libraries, Path remappedJar, String originMappings) {
+		remapJar(logger, originJar,
+				TinyRemapperMappingsHelper.create(intermediaryMappings, originMappings, "intermediary"),
+				bulldoze, libraries.stream().map(File::toPath).toArray(Path[]::new), remappedJar, originMappings, "intermediary");
+	}
+
 	private static void remapJar(Logger logger, Path input, IMappingProvider mappings, boolean bulldozeMappings, Path[] classpath, Path output, String fromM, String toM) {
 		logger.lifecycle(":Remapping minecraft (TinyRemapper, " + fromM + " -> " + toM + ')');
 
-		TinyRemapper remapper = TinyRemapper.newRemapper()
+		remapJar(makeRemapper(mappings, bulldozeMappings), input, mappings, classpath, output, new JarPostProcessor());
+	}
+
+	private static TinyRemapper makeRemapper(IMappingProvider mappings, boolean bulldozeMappings) {
+		return TinyRemapper.newRemapper()
 				.withMappings(mappings)
 				.ignoreConflicts(bulldozeMappings)
 				.renameInvalidLocals(true)
 				.rebuildSourceFilenames(true)
 				.build();
+	}
 
+	/**
+	 * Remap the input jar into the output with the given remapper, skipping reading the classpath if it is {@code null} as it has already been read.
+	 * The given post processor is applied to the output as it is written.
+	 */
+	private static void remapJar(TinyRemapper remapper, Path input, IMappingProvider mappings, Path[] classpath, Path output, JarPostProcessor processor) {
 		try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
-			remapper.readClassPath(classpath);
+			if (classpath != null) remapper.readClassPath(classpath);
 			remapper.readInputs(input);
-			remapper.apply(outputConsumer);
+			remapper.apply(processor.wrap(outputConsumer));
 			outputConsumer.addNonClassFiles(input, NonClassCopyMode.FIX_META_INF, remapper);
+			processor.finish(input, outputConsumer);
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to remap JAR " + input + " with mappings from " + mappings, e);
 		} finally {
@@ -191,15 +394,14 @@ public class MapJarsTiny {
 		}
 	}
 
-	public static void transform(Project project, Set<Pair<String, String>> ats, MinecraftMappedProvider jarProvider, MappingsProvider mappingProvider) throws IOException {
+	/** Work out the given access transformations for each jar, adding them to the post processors of the Intermediary and named jars to be applied as they are written */
+	public static void transform(Project project, Set<Pair<String, String>> ats, MappingsProvider mappingProvider, JarPostProcessor interProcessor, JarPostProcessor namedProcessor) throws IOException {
 		project.getLogger().info("Reading in mappings...");
 
-		Mappings mappings;
-		try (InputStream in = new FileInputStream(mappingProvider.MAPPINGS_TINY)) {
-			mappings = net.fabricmc.mappings.MappingsProvider.readTinyMappings(in, false);
-		}
+		Mappings namedMappings = mappingProvider.getMappings();
+		MappingIndex mappings = MappingIndex.of(namedMappings);
 
-		project.getLogger().info("Read in " + mappings.getClassEntries().size() + " classes");
+		project.getLogger().info("Read in " + namedMappings.getClassEntries().size() + " classes");
 		project.getLogger().info("Working out what we have to do");
 
 		final String wildcard = "<*>"; //Special marker for the class itself rather than a method
@@ -209,10 +411,12 @@ public class MapJarsTiny {
 		Map<Boolean, Set<Pair<String, String>>> bits = ats.stream().collect(Collectors.partitioningBy(pair -> pair.getRight() != null, Collectors.toSet()));
 		Set<String> rawClasses = bits.get(Boolean.FALSE).stream().map(Pair::getLeft).collect(Collectors.toSet());
 
-		for (ClassEntry entry : mappings.getClassEntries()) {
-			String named = entry.get("named");
-			if (rawClasses.contains(named)) {
-				rawClasses.remove(named);
+		for (Iterator<String> it = rawClasses.iterator(); it.hasNext();) {
+			String named = it.next();
+
+			ClassEntry entry = mappings.findClass("named", named);
+			if (entry != null) {
+				it.remove();
 
 				String inter = entry.get("intermediary");
 				if (inter == null) throw new IllegalStateException("Missing intermediary name for " + named);
@@ -222,31 +426,35 @@ public class MapJarsTiny {
 		}
 
 		Map<String, Set<String>> methods = bits.get(Boolean.TRUE).stream().collect(Collectors.groupingBy(Pair::getLeft, Collectors.mapping(Pair::getRight, Collectors.toSet())));
-		for (MethodEntry entry : mappings.getMethodEntries()) {
-			EntryTriple named = entry.get("named");
-			Set<String> targets = methods.get(named.getOwner());
+		for (Iterator<Entry<String, Set<String>>> it = methods.entrySet().iterator(); it.hasNext();) {
+			Entry<String, Set<String>> entry = it.next();
 
-			if (targets != null && targets.contains(named.getName() + named.getDesc())) {
-				EntryTriple inter = entry.get("intermediary");
-				if (inter == null) throw new IllegalStateException("Missing intermediary name for " + named);
-				transforms.computeIfAbsent(named.getOwner(), k -> new HashSet<>()).add(named.getName() + named.getDesc());
-				interTransforms.computeIfAbsent(inter.getOwner(), k -> new HashSet<>()).add(inter.getName() + inter.getDesc());
+			for (Iterator<String> targets = entry.getValue().iterator(); targets.hasNext();) {
+				String method = targets.next();
+				int split = method.indexOf('(');
+				if (split < 0) continue; //Not a method, can't be in the mappings
 
-				targets.remove(named.getName() + named.getDesc());
-				if (targets.isEmpty()) methods.remove(named.getOwner());
+				EntryTriple named = new EntryTriple(entry.getKey(), method.substring(0, split), method.substring(split));
+				MethodEntry mapping = mappings.findMethod("named", named);
+
+				if (mapping != null) {
+					EntryTriple inter = mapping.get("intermediary");
+					if (inter == null) throw new IllegalStateException("Missing intermediary name for " + named);
+					transforms.computeIfAbsent(named.getOwner(), k -> new HashSet<>()).add(method);
+					interTransforms.computeIfAbsent(inter.getOwner(), k -> new HashSet<>()).add(inter.getName() + inter.getDesc());
+
+					targets.remove();
+				}
 			}
+
+			if (entry.getValue().isEmpty()) it.remove();
 		}
 
 		if (!methods.isEmpty()) {
 			List<String> resolved = new ArrayList<>();
 			UnaryOperator<String> remapper = name -> {
-				for (ClassEntry classEntry : mappings.getClassEntries()) {
-					if (name.equals(classEntry.get("named"))) {
-						return classEntry.get("intermediary");
-					}
-				}
-
-				return name;
+				String inter = mappings.mapClass("named", "intermediary", name);
+				return inter != null ? inter : name;
 			};
 
 			for (Entry<String, Set<String>> entry : methods.entrySet()) {
@@ -285,39 +493,17 @@ public class MapJarsTiny {
 			throw new InvalidUserDataException("Invalid lines found within access transformer");
 		}
 		project.getLogger().info("Found " + transforms.size() + " classes that need tinkering with");
-		project.getLogger().lifecycle(":transforming minecraft");
-
-		project.getLogger().info("Transforming intermediary jar");
-		doTheDeed(jarProvider.MINECRAFT_INTERMEDIARY_JAR, mappings, "intermediary", interTransforms, wildcard);
-		project.getLogger().info("Transforming named jar");
-		doTheDeed(jarProvider.MINECRAFT_MAPPED_JAR, mappings, "named", transforms, wildcard);
-		project.getLogger().info("Transformation complete"); //Probably, successful is another matter
-	}
 
-	private static void doTheDeed(File jar, Mappings mappings, String type, Map<String, Set<String>> transforms, String wildcard) throws IOException {
-		Set<String> classPool = mappings.getClassEntries().parallelStream().map(entry -> entry.get(type)).collect(Collectors.toSet());
-		ZipEntryAT[] transformers = AccessTransformerHelper.makeZipATs(classPool, transforms, wildcard);
-
-		ZipUtil.transformEntries(jar, transformers);
-
-		if (!Arrays.stream(transformers).allMatch(ZipEntryAT::didTransform)) {
-			List<String> missed = new ArrayList<>();
-			for (ZipEntryAT transformer : transformers) {
-				if (!transformer.didTransform()) {
-					String name = transformer.getPath();
-					missed.add(name.substring(0, name.length() - ".class".length()));
-				}
-			}
-			throw new IllegalStateException("Finished transforming but missed " + missed);
-		}
+		interProcessor.withTransformer(AccessTransformerHelper.makeATs(mappings.getClassNames("intermediary"), interTransforms, wildcard));
+		namedProcessor.withTransformer(AccessTransformerHelper.makeATs(mappings.getClassNames("named"), transforms, wildcard));
 	}
 
-	private static void addVersionJSON(File jar, String version) {
+	private static byte[] versionJSON(String version) {
 		//Add the minimum needed for Fabric Loader's McVersionLookup to infer a semver version
 		//Included from every version since 18w47b, but never before that
-		ZipUtil.addEntry(jar, "version.json", String.join("\n", "{",
+		return String.join("\n", "{",
 				"	\"id\": \"" + version + "\",",
 				"	\"release_target\": \"" + version + '"',
-				"}").getBytes(StandardCharsets.UTF_8));
+				"}").getBytes(StandardCharsets.UTF_8);
 	}
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs tasks on the common pool whilst passing their results on in the order the tasks were submitted. Only a couple of tasks per
+ * thread are allowed to be in flight at once, so there's only ever a bounded number of results held in memory waiting to be passed on.
+ */
+public final class OrderedTasks<T> implements AutoCloseable {
+	public interface ResultConsumer<T> {//Consumer<T> which throws an IOException
+		void accept(T result) throws IOException;
+	}
+
+	private final int maxPending = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism());
+	private final Deque<ForkJoinTask<T>> pending = new ArrayDeque<>();
+	private final ResultConsumer<? super T> consumer;
+
+	public OrderedTasks(ResultConsumer<? super T> consumer) {
+		this.consumer = consumer;
+	}
+
+	/** Submit the given task, waiting for and passing on the results of earlier tasks until there's room for it */
+	public void submit(Callable<T> task) throws IOException {
+		pending.add(ForkJoinPool.commonPool().submit(task));
+
+		while (pending.size() > maxPending) {
+			consumer.accept(pending.remove().join());
+		}
+	}
+
+	/** Wait for and pass on the results of every task submitted so far */
+	public void finish() throws IOException {
+		while (!pending.isEmpty()) {
+			consumer.accept(pending.remove().join());
+		}
+	}
+
+	/** Cancel any tasks which are yet to be passed on, for when something has gone wrong and their results are no longer wanted */
+	@Override
+	public void close() {
+		pending.forEach(task -> task.cancel(false));
+		pending.clear();
+	}
+}
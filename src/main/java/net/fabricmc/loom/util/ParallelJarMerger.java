@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import com.google.common.io.ByteStreams;
+
+import net.fabricmc.stitch.merge.ClassMerger;
+import net.fabricmc.stitch.merge.SyntheticParameterClassVisitor;
+
+/**
+ * Merges a client and server jar in the same manner as Stitch's {@link net.fabricmc.stitch.merge.JarMerger}, but with each entry read, merged
+ * and rewritten on the common pool rather than just the merging.
+ */
+public class ParallelJarMerger {
+	private static final ClassMerger CLASS_MERGER = new ClassMerger();
+	private static final byte[] MANIFEST = "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(StandardCharsets.UTF_8);
+
+	private static class Result {
+		final ZipEntry source;
+		final byte[] data;
+
+		Result(ZipEntry source, byte[] data) {
+			this.source = source;
+			this.data = data;
+		}
+	}
+
+	/** Merge the given client and server jars into the given merged jar, which is only replaced once the merging has finished */
+	public static void merge(Path clientJar, Path serverJar, Path mergedJar) throws IOException {
+		Path temp = Files.createTempFile(mergedJar.toAbsolutePath().getParent(), mergedJar.getFileName().toString(), ".tmp");
+
+		try (ZipFile client = new ZipFile(clientJar.toFile()); ZipFile server = new ZipFile(serverJar.toFile());
+				ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			Set<String> entries = new LinkedHashSet<>();
+			for (ZipFile jar : Arrays.asList(client, server)) {
+				for (ZipEntry entry : Collections.list(jar.entries())) {
+					if (!entry.isDirectory() && !isSignature(entry.getName())) entries.add(entry.getName());
+				}
+			}
+
+			Set<String> directories = new HashSet<>();
+
+			try (OrderedTasks<Result> tasks = new OrderedTasks<>(result -> write(out, directories, result))) {
+				for (String name : entries) {
+					tasks.submit(() -> merge(client, server, name));
+				}
+
+				tasks.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		} catch (Throwable t) {
+			Files.deleteIfExists(temp);
+			throw t;
+		}
+
+		Files.move(temp, mergedJar, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static boolean isSignature(String name) {
+		return name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".RSA"));
+	}
+
+	private static byte[] read(ZipFile jar, ZipEntry entry) {
+		if (entry == null) return null;
+
+		try (InputStream in = jar.getInputStream(entry)) {
+			return ByteStreams.toByteArray(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + entry.getName() + " from " + jar.getName(), e);
+		}
+	}
+
+	private static Result merge(ZipFile client, ZipFile server, String name) {
+		ZipEntry clientEntry = client.getEntry(name);
+		ZipEntry serverEntry = server.getEntry(name);
+		ZipEntry source = clientEntry != null ? clientEntry : serverEntry;
+
+		if ("META-INF/MANIFEST.MF".equals(name)) return new Result(source, MANIFEST);
+
+		boolean isClass = name.endsWith(".class");
+		boolean isMinecraft = clientEntry != null || name.startsWith("net/minecraft") || !name.contains("/");
+		if (isClass && !isMinecraft) return null; //Server bundles libraries, client doesn't - skip them
+
+		byte[] clientData = read(client, clientEntry);
+		byte[] serverData = read(server, serverEntry);
+
+		String side;
+		byte[] data;
+		if (clientData != null && serverData != null) {
+			side = null;
+			data = !isClass || Arrays.equals(clientData, serverData) ? clientData : CLASS_MERGER.merge(clientData, serverData);
+		} else if (clientData != null) {
+			side = "CLIENT";
+			data = clientData;
+		} else {
+			side = "SERVER";
+			data = serverData;
+		}
+
+		if (isClass) {
+			ClassReader reader = new ClassReader(data);
+			ClassWriter writer = new ClassWriter(0);
+
+			ClassVisitor visitor = writer;
+			if (side != null) visitor = new ClassMerger.SidedClassVisitor(Opcodes.ASM7, visitor, side);
+			visitor = new SyntheticParameterClassVisitor(Opcodes.ASM7, visitor);
+
+			reader.accept(visitor, 0);
+			data = writer.toByteArray();
+		}
+
+		return new Result(source, data);
+	}
+
+	private static void write(ZipOutputStream out, Set<String> directories, Result result) throws IOException {
+		if (result == null) return;
+		String name = result.source.getName();
+
+		for (int split = name.indexOf('/'); split > 0; split = name.indexOf('/', split + 1)) {
+			String directory = name.substring(0, split + 1);
+
+			if (directories.add(directory)) {
+				out.putNextEntry(new ZipEntry(directory));
+				out.closeEntry();
+			}
+		}
+
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(result.source.getTime());
+		out.putNextEntry(entry);
+		out.write(result.data);
+		out.closeEntry();
+	}
+}
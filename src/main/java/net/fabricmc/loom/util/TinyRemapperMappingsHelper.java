@@ -24,7 +24,18 @@
 
 package net.fabricmc.loom.util;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.mappings.ClassEntry;
@@ -40,24 +51,62 @@ public class TinyRemapperMappingsHelper {
 		String suggestLocalName(String type, boolean plural);
 	}
 
+	private static class Tables {
+		final Map<String, String> classes, fields, methods;
+
+		Tables(Mappings mappings, String from, String to) {
+			Map<String, String> classes = new HashMap<>();
+			for (ClassEntry entry : mappings.getClassEntries()) {
+				classes.put(entry.get(from), entry.get(to));
+			}
+			this.classes = Collections.unmodifiableMap(classes);
+
+			Map<String, String> fields = new HashMap<>();
+			for (FieldEntry entry : mappings.getFieldEntries()) {
+				add(entry, from, to, fields);
+			}
+			this.fields = Collections.unmodifiableMap(fields);
+
+			Map<String, String> methods = new HashMap<>();
+			for (MethodEntry entry : mappings.getMethodEntries()) {
+				EntryTriple fromTriple = entry.get(from);
+				methods.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+			}
+			this.methods = Collections.unmodifiableMap(methods);
+		}
+	}
+	/** Mappings are held weakly so the tables go once the mappings are no longer in use, whilst the tables themselves can go whenever memory is short */
+	private static final LoadingCache<Mappings, Cache<List<String>, Tables>> TABLES = CacheBuilder.newBuilder().weakKeys()
+			.build(CacheLoader.from(() -> CacheBuilder.newBuilder().softValues().build()));
+
 	private TinyRemapperMappingsHelper() { }
 
+	private static Tables getTables(Mappings mappings, String from, String to) {
+		try {
+			return TABLES.getUnchecked(mappings).get(Arrays.asList(from, to), () -> new Tables(mappings, from, to));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new RuntimeException("Error building " + from + " -> " + to + " mappings", e.getCause());
+		}
+	}
+
+	private static void load(Mappings mappings, String from, String to, Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+		Tables tables = getTables(mappings, from, to);
+
+		classMap.putAll(tables.classes);
+		fieldMap.putAll(tables.fields);
+		methodMap.putAll(tables.methods);
+	}
+
+	/** Create a provider which leaves naming locals to Tiny Remapper, for when there is no extension to ask */
+	public static IMappingProvider create(Mappings mappings, String from, String to) {
+		return (classMap, fieldMap, methodMap) -> load(mappings, from, to, classMap, fieldMap, methodMap);
+	}
+
 	public static IMappingProvider create(LoomGradleExtension extension, Mappings mappings, String from, String to) {
 		return new IMappingProvider() {
 			@Override
 			public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
-				for (ClassEntry entry : mappings.getClassEntries()) {
-					classMap.put(entry.get(from), entry.get(to));
-				}
-
-				for (FieldEntry entry : mappings.getFieldEntries()) {
-					add(entry, from, to, fieldMap);
-				}
-
-				for (MethodEntry entry : mappings.getMethodEntries()) {
-					EntryTriple fromTriple = entry.get(from);
-					methodMap.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
-				}
+				TinyRemapperMappingsHelper.load(mappings, from, to, classMap, fieldMap, methodMap);
 			}
 
 			@Override